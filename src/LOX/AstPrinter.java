@@ -35,12 +35,12 @@ public class AstPrinter implements Expr.Visitor<String> {
 	// visitors
 	@Override
 	public String visitAssignExpr(Expr.Assign expr) {
-		return parenthesize("zuweisung " + expr.name.lexeme, expr.value);
+		return parenthesize("zuweisung " + expr.name.lexeme(), expr.value);
 	}
 
 	@Override
 	public String visitBinaryExpr(Expr.Binary expr) {
-		return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+		return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
 	}
 
 	@Override
@@ -50,17 +50,17 @@ public class AstPrinter implements Expr.Visitor<String> {
 
 	@Override
 	public String visitGetExpr(Expr.Get expr) {
-		return parenthesize("holen " + expr.name.lexeme, expr.object);
+		return parenthesize("holen " + expr.name.lexeme(), expr.object);
 	}
 
 	@Override
 	public String visitSetExpr(Expr.Set expr) {
-		return parenthesize("setzen " + expr.name.lexeme, expr.object, expr.value);
+		return parenthesize("setzen " + expr.name.lexeme(), expr.object, expr.value);
 	}
 
 	@Override
 	public String visitSuperExpr(Expr.Super expr) {
-		return parenthesize("super " + expr.method.lexeme);
+		return parenthesize("super " + expr.method.lexeme());
 	}
 
 	@Override
@@ -82,16 +82,21 @@ public class AstPrinter implements Expr.Visitor<String> {
 
 	@Override
 	public String visitLogicalExpr(Expr.Logical expr) {
-		return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+		return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
 	}
 
 	@Override
 	public String visitUnaryExpr(Expr.Unary expr) {
-		return parenthesize(expr.operator.lexeme, expr.right);
+		return parenthesize(expr.operator.lexeme(), expr.right);
 	}
 
 	@Override
 	public String visitVariableExpr(Expr.Variable expr) {
-		return expr.name.lexeme;
+		return expr.name.lexeme();
+	}
+
+	@Override
+	public String visitListLiteralExpr(Expr.ListLiteral expr) {
+		return parenthesize("liste", expr.elements.toArray(new Expr[0]));
 	}
 }
\ No newline at end of file
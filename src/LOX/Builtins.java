@@ -0,0 +1,121 @@
+package LOX;
+
+// What the Interpreter, the VM and programs compiled by TOOL.CompileLox share besides the
+// values themselves: how a value prints, and the native functions. Each of them wraps the
+// natives in its own kind of callable, through a Registry; CompileLox copies this class, with
+// LoxList, LoxMap and Rope, into every jar, so it must not reach into the interpreter.
+public final class Builtins {
+	private Builtins() {
+	}
+
+	public interface Native0 {
+		Object call();
+	}
+
+	public interface Native1 {
+		Object call(Object a);
+	}
+
+	public interface Native2 {
+		Object call(Object a, Object b);
+	}
+
+	public interface NativeN {
+		Object call(Object[] arguments);
+	}
+
+	// takes each native by its arity, so a caller that knows how many arguments it has can
+	// pass them straight through
+	public interface Registry {
+		void register0(String name, Native0 body);
+
+		void register1(String name, Native1 body);
+
+		void register2(String name, Native2 body);
+
+		// more than two parameters: the arguments come as one array
+		void registerN(String name, int arity, NativeN body);
+	}
+
+	// what a native throws: it does not know where it was called, so the call site turns this
+	// into a runtime error at its own line
+	public static final class NativeError extends RuntimeException {
+		NativeError(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	// registers every native, always in the same order
+	public static void define(Registry registry) {
+		registry.register0("uhr", () -> (double) System.currentTimeMillis() / 1000.0);
+
+		// lists
+		registry.register1("länge", value -> (double) list(value).size());
+		registry.register2("anhängen", (target, value) -> {
+			list(target).add(value);
+			return null;
+		});
+		registry.register2("element", (target, index) -> {
+			LoxList elements = list(target);
+			return elements.get(index(elements, index));
+		});
+		registry.registerN("setzen", 3, arguments -> {
+			LoxList elements = list(arguments[0]);
+			elements.set(index(elements, arguments[1]), arguments[2]);
+			return arguments[2];
+		});
+
+		// maps
+		registry.register0("karte", LoxMap::new);
+		registry.registerN("einfügen", 3, arguments -> {
+			map(arguments[0]).put(arguments[1], arguments[2]);
+			return arguments[2];
+		});
+		registry.register2("holen", (target, key) -> map(target).get(key));
+		registry.register2("entfernen", (target, key) -> map(target).remove(key));
+		registry.register1("größe", value -> (double) map(value).size());
+		registry.register1("schlüssel", value -> map(value).keys());
+	}
+
+	private static LoxMap map(Object value) {
+		if (value instanceof LoxMap)
+			return (LoxMap) value;
+		throw new NativeError("Erwartet eine Karte.");
+	}
+
+	private static LoxList list(Object value) {
+		if (value instanceof LoxList)
+			return (LoxList) value;
+		throw new NativeError("Erwartet eine Liste.");
+	}
+
+	// a whole number naming an element of the list
+	private static int index(LoxList list, Object value) {
+		if (!(value instanceof Double))
+			throw new NativeError("Index muss eine Zahl sein.");
+		double index = (double) value;
+		if (index != Math.floor(index))
+			throw new NativeError("Index muss eine ganze Zahl sein.");
+		if (index < 0 || index >= list.size())
+			throw new NativeError("Index außerhalb der Liste.");
+		return (int) index;
+	}
+
+	// a value as drucke prints it
+	public static String stringify(Object object) {
+		if (object == null)
+			return "nichts"; // nil → nichts
+
+		if (object instanceof Boolean) {
+			return (Boolean) object ? "wahr" : "falsch";
+		}
+
+		if (object instanceof Double) {
+			String text = object.toString();
+			if (text.endsWith(".0"))
+				text = text.substring(0, text.length() - 2);
+			return text;
+		}
+		return object.toString();
+	}
+}
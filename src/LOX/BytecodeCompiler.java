@@ -0,0 +1,723 @@
+package LOX;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Compiles the resolved AST into bytecode for the VM.
+ * The Resolver has already rejected invalid programs, so this pass only has to
+ * lay out the stack: locals become stack slots of their function's frame,
+ * locals captured by inner functions become upvalues and everything at the
+ * top level is a global looked up by name.
+ */
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	private static final int MAX_LOCALS = 256;
+	private static final int MAX_UPVALUES = 256;
+
+	private enum FunctionType {
+		SCRIPT, FUNCTION, METHOD, INITIALIZER
+	}
+
+	// a local variable living in a stack slot of the current frame
+	private static class Local {
+		final String name;
+		int depth; // scope depth, -1 while its initializer is being compiled
+		boolean isCaptured = false; // an inner function refers to it, so it must be closed over
+
+		Local(String name, int depth) {
+			this.name = name;
+			this.depth = depth;
+		}
+	}
+
+	// how a closure finds a captured variable: a local of the enclosing function or one of its upvalues
+	private static class UpvalueRef {
+		final int index;
+		final boolean isLocal;
+
+		UpvalueRef(int index, boolean isLocal) {
+			this.index = index;
+			this.isLocal = isLocal;
+		}
+	}
+
+	// compiler state for the function currently being compiled
+	private static class FunctionState {
+		final FunctionState enclosing;
+		final Prototype function;
+		final FunctionType type;
+		final List<Local> locals = new ArrayList<>();
+		final List<UpvalueRef> upvalues = new ArrayList<>();
+		int scopeDepth = 0;
+		int stackSize = 1; // slots in use after the last instruction, slot 0 included
+		// the stack size at each forward jump not yet patched, by the offset to patch: where the
+		// jump lands, code that came after an unconditional jump or loop has left a different one
+		final Map<Integer, Integer> jumpStackSizes = new HashMap<>();
+
+		FunctionState(FunctionState enclosing, Prototype function, FunctionType type) {
+			this.enclosing = enclosing;
+			this.function = function;
+			this.type = type;
+			// slot 0 holds the receiver in methods and the called closure itself otherwise
+			locals.add(new Local(type == FunctionType.METHOD || type == FunctionType.INITIALIZER ? "dies" : "", 0));
+		}
+	}
+
+	private static class ClassState {
+		final ClassState enclosing;
+		boolean hasSuperclass = false;
+
+		ClassState(ClassState enclosing) {
+			this.enclosing = enclosing;
+		}
+	}
+
+	private FunctionState current = null;
+	private ClassState currentClass = null;
+	private int line = 1; // source line of the instructions being emitted
+
+	// entry point: compiles a whole program into the prototype of the top level script
+	Prototype compile(List<Stmt> statements) {
+		current = new FunctionState(null, new Prototype(null), FunctionType.SCRIPT);
+		for (Stmt statement : statements) {
+			compile(statement);
+		}
+		emitReturn();
+		return current.function;
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+
+	// Statements
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		beginScope();
+		for (Stmt statement : stmt.statements) {
+			compile(statement);
+		}
+		endScope();
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		line = stmt.name.line;
+		int nameConstant = makeConstant(stmt.name.lexeme());
+		declareVariable(stmt.name.lexeme());
+
+		emitOp(OpCode.CLASS);
+		emitShort(nameConstant);
+		defineVariable(stmt.name.lexeme());
+
+		ClassState classState = new ClassState(currentClass);
+		currentClass = classState;
+
+		if (stmt.superclass != null) {
+			compile(stmt.superclass);
+
+			// "super" is a hidden local of a scope around the methods, so they capture it as an upvalue
+			beginScope();
+			addLocal("super");
+			markInitialized();
+
+			namedVariable(stmt.name.lexeme(), false);
+			line = stmt.superclass.name.line;
+			emitOp(OpCode.INHERIT);
+			classState.hasSuperclass = true;
+		}
+
+		namedVariable(stmt.name.lexeme(), false);
+		for (Stmt.Function method : stmt.methods) {
+			FunctionType type = method.name.lexeme().equals("init") ? FunctionType.INITIALIZER : FunctionType.METHOD;
+			function(method, type);
+			line = method.name.line;
+			emitOp(OpCode.METHOD);
+			emitShort(makeConstant(method.name.lexeme()));
+		}
+		emitOp(OpCode.POP);
+
+		if (classState.hasSuperclass) {
+			endScope();
+		}
+		currentClass = currentClass.enclosing;
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		compile(stmt.expression);
+		emitOp(OpCode.POP);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		line = stmt.name.line;
+		declareVariable(stmt.name.lexeme());
+		// a function may refer to itself, so it is usable before its body is compiled
+		markInitialized();
+		function(stmt, FunctionType.FUNCTION);
+		defineVariable(stmt.name.lexeme());
+		return null;
+	}
+
+	// compiles the body into its own prototype and emits the closure that captures its upvalues
+	private void function(Stmt.Function stmt, FunctionType type) {
+		FunctionState state = new FunctionState(current, new Prototype(stmt.name.lexeme()), type);
+		current = state;
+		beginScope();
+
+		for (Token param : stmt.params) {
+			current.function.arity++;
+			line = param.line;
+			addLocal(param.lexeme());
+			adjustStack(1); // the caller pushed the argument
+			markInitialized();
+		}
+		for (Stmt statement : stmt.body) {
+			compile(statement);
+		}
+		emitReturn();
+
+		current = state.enclosing;
+		Prototype function = state.function;
+		function.upvalueCount = state.upvalues.size();
+
+		emitOp(OpCode.CLOSURE);
+		emitShort(makeConstant(function));
+		for (UpvalueRef upvalue : state.upvalues) {
+			emitByte(upvalue.isLocal ? 1 : 0);
+			emitByte(upvalue.index);
+		}
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		compile(stmt.condition);
+
+		int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+		emitOp(OpCode.POP);
+		compile(stmt.thenBranch);
+
+		int elseJump = emitJump(OpCode.JUMP);
+		patchJump(thenJump);
+		emitOp(OpCode.POP);
+
+		if (stmt.elseBranch != null)
+			compile(stmt.elseBranch);
+		patchJump(elseJump);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		compile(stmt.expression);
+		emitOp(OpCode.PRINT);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		line = stmt.keyword.line;
+		if (stmt.value == null) {
+			emitReturn();
+		} else {
+			// for zurückgeben f(...) the VM sees the RETURN right after the call and reuses the frame
+			compile(stmt.value);
+			emitOp(OpCode.RETURN);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		line = stmt.name.line;
+		declareVariable(stmt.name.lexeme());
+
+		if (stmt.initializer != null) {
+			compile(stmt.initializer);
+		} else {
+			emitOp(OpCode.NIL);
+		}
+
+		defineVariable(stmt.name.lexeme());
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		int loopStart = current.function.chunk.count;
+		compile(stmt.condition);
+
+		int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+		emitOp(OpCode.POP);
+		compile(stmt.body);
+		emitLoop(loopStart);
+
+		patchJump(exitJump);
+		emitOp(OpCode.POP);
+		return null;
+	}
+
+	// Expressions
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		compile(expr.value);
+		line = expr.name.line;
+		namedVariable(expr.name.lexeme(), true);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		compile(expr.left);
+		compile(expr.right);
+
+		line = expr.operator.line;
+		switch (expr.operator.type) {
+		case BANG_EQUAL:
+			emitOp(OpCode.EQUAL);
+			emitOp(OpCode.NOT);
+			break;
+		case EQUAL_EQUAL:
+			emitOp(OpCode.EQUAL);
+			break;
+		case GREATER:
+			emitOp(OpCode.GREATER);
+			break;
+		case GREATER_EQUAL:
+			emitOp(OpCode.GREATER_EQUAL);
+			break;
+		case LESS:
+			emitOp(OpCode.LESS);
+			break;
+		case LESS_EQUAL:
+			emitOp(OpCode.LESS_EQUAL);
+			break;
+		case PLUS:
+			emitOp(OpCode.ADD);
+			break;
+		case MINUS:
+			emitOp(OpCode.SUBTRACT);
+			break;
+		case STAR:
+			emitOp(OpCode.MULTIPLY);
+			break;
+		case SLASH:
+			emitOp(OpCode.DIVIDE);
+			break;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		// obj.method(...) and super.method(...) are invoked directly, without a bound method in between
+		if (expr.callee instanceof Expr.Get) {
+			Expr.Get get = (Expr.Get) expr.callee;
+			compile(get.object);
+			compileArguments(expr.arguments);
+			line = expr.paren.line;
+			emitOp(OpCode.INVOKE);
+			emitShort(makeConstant(get.name.lexeme()));
+			emitByte(expr.arguments.size());
+			adjustStack(-expr.arguments.size());
+			return null;
+		}
+
+		if (expr.callee instanceof Expr.Super) {
+			Expr.Super superExpr = (Expr.Super) expr.callee;
+			line = superExpr.keyword.line;
+			namedVariable("dies", false);
+			compileArguments(expr.arguments);
+			namedVariable("super", false);
+			line = expr.paren.line;
+			emitOp(OpCode.SUPER_INVOKE);
+			emitShort(makeConstant(superExpr.method.lexeme()));
+			emitByte(expr.arguments.size());
+			adjustStack(-expr.arguments.size());
+			return null;
+		}
+
+		compile(expr.callee);
+		compileArguments(expr.arguments);
+		line = expr.paren.line;
+		emitOp(OpCode.CALL);
+		emitByte(expr.arguments.size());
+		adjustStack(-expr.arguments.size());
+		return null;
+	}
+
+	private void compileArguments(List<Expr> arguments) {
+		for (Expr argument : arguments) {
+			compile(argument);
+		}
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get expr) {
+		compile(expr.object);
+		line = expr.name.line;
+		emitOp(OpCode.GET_PROPERTY);
+		emitShort(makeConstant(expr.name.lexeme()));
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			emitOp(OpCode.NIL);
+		} else if (expr.value.equals(true)) {
+			emitOp(OpCode.TRUE);
+		} else if (expr.value.equals(false)) {
+			emitOp(OpCode.FALSE);
+		} else {
+			emitOp(OpCode.CONSTANT);
+			emitShort(makeConstant(expr.value));
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+		line = expr.bracket.line;
+		emitOp(OpCode.LIST);
+		emitShort(expr.elements.size());
+		for (Expr element : expr.elements) {
+			compile(element);
+			emitOp(OpCode.LIST_APPEND);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		compile(expr.left);
+		if (expr.operator.type == TokenType.AND) {
+			int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+			emitOp(OpCode.POP);
+			compile(expr.right);
+			patchJump(endJump);
+		} else { // OR
+			int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+			int endJump = emitJump(OpCode.JUMP);
+			patchJump(elseJump);
+			emitOp(OpCode.POP);
+			compile(expr.right);
+			patchJump(endJump);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set expr) {
+		compile(expr.object);
+		compile(expr.value);
+		line = expr.name.line;
+		emitOp(OpCode.SET_PROPERTY);
+		emitShort(makeConstant(expr.name.lexeme()));
+		return null;
+	}
+
+	@Override
+	public Void visitSuperExpr(Expr.Super expr) {
+		line = expr.keyword.line;
+		namedVariable("dies", false);
+		namedVariable("super", false);
+		line = expr.method.line;
+		emitOp(OpCode.GET_SUPER);
+		emitShort(makeConstant(expr.method.lexeme()));
+		return null;
+	}
+
+	@Override
+	public Void visitThisExpr(Expr.This expr) {
+		line = expr.keyword.line;
+		namedVariable("dies", false);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		compile(expr.right);
+		line = expr.operator.line;
+		switch (expr.operator.type) {
+		case BANG:
+			emitOp(OpCode.NOT);
+			break;
+		case MINUS:
+			emitOp(OpCode.NEGATE);
+			break;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		line = expr.name.line;
+		namedVariable(expr.name.lexeme(), false);
+		return null;
+	}
+
+	// Variables and scopes
+
+	// emits the load (or store) of a variable: a local slot, an upvalue or a global
+	private void namedVariable(String name, boolean assign) {
+		int arg = resolveLocal(current, name);
+		if (arg != -1) {
+			emitOp(assign ? OpCode.SET_LOCAL : OpCode.GET_LOCAL);
+			emitByte(arg);
+			return;
+		}
+
+		arg = resolveUpvalue(current, name);
+		if (arg != -1) {
+			emitOp(assign ? OpCode.SET_UPVALUE : OpCode.GET_UPVALUE);
+			emitByte(arg);
+			return;
+		}
+
+		emitOp(assign ? OpCode.SET_GLOBAL : OpCode.GET_GLOBAL);
+		emitShort(globalSymbol(name));
+	}
+
+	// globals are addressed by the symbol id of their name, an index into the VM's globals
+	private int globalSymbol(String name) {
+		int symbol = Symbols.intern(name);
+		if (symbol > 0xffff) {
+			Lox.error(line, "Zu viele globale Namen.");
+			return 0;
+		}
+		return symbol;
+	}
+
+	private int resolveLocal(FunctionState state, String name) {
+		for (int i = state.locals.size() - 1; i >= 0; i--) {
+			// the Resolver already rejected reads of a local in its own initializer
+			if (state.locals.get(i).name.equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int resolveUpvalue(FunctionState state, String name) {
+		if (state.enclosing == null)
+			return -1;
+
+		int local = resolveLocal(state.enclosing, name);
+		if (local != -1) {
+			state.enclosing.locals.get(local).isCaptured = true;
+			return addUpvalue(state, local, true);
+		}
+
+		int upvalue = resolveUpvalue(state.enclosing, name);
+		if (upvalue != -1) {
+			return addUpvalue(state, upvalue, false);
+		}
+
+		return -1;
+	}
+
+	private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+		for (int i = 0; i < state.upvalues.size(); i++) {
+			UpvalueRef upvalue = state.upvalues.get(i);
+			if (upvalue.index == index && upvalue.isLocal == isLocal) {
+				return i;
+			}
+		}
+
+		if (state.upvalues.size() == MAX_UPVALUES) {
+			Lox.error(line, "Zu viele Closure-Variablen in der Funktion.");
+			return 0;
+		}
+
+		state.upvalues.add(new UpvalueRef(index, isLocal));
+		return state.upvalues.size() - 1;
+	}
+
+	private void declareVariable(String name) {
+		if (current.scopeDepth == 0)
+			return;
+		addLocal(name);
+	}
+
+	private void addLocal(String name) {
+		if (current.locals.size() == MAX_LOCALS) {
+			Lox.error(line, "Zu viele lokale Variablen in der Funktion.");
+			return;
+		}
+		current.locals.add(new Local(name, -1));
+	}
+
+	private void markInitialized() {
+		if (current.scopeDepth == 0)
+			return;
+		current.locals.get(current.locals.size() - 1).depth = current.scopeDepth;
+	}
+
+	// globals are defined by name, a local simply stays in the stack slot its value was pushed to
+	private void defineVariable(String name) {
+		if (current.scopeDepth > 0) {
+			markInitialized();
+			return;
+		}
+		emitOp(OpCode.DEFINE_GLOBAL);
+		emitShort(globalSymbol(name));
+	}
+
+	private void beginScope() {
+		current.scopeDepth++;
+	}
+
+	// pops the scope's locals, moving the captured ones to the heap first
+	private void endScope() {
+		current.scopeDepth--;
+
+		List<Local> locals = current.locals;
+		while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+			if (locals.get(locals.size() - 1).isCaptured) {
+				emitOp(OpCode.CLOSE_UPVALUE);
+			} else {
+				emitOp(OpCode.POP);
+			}
+			locals.remove(locals.size() - 1);
+		}
+	}
+
+	// Emitting bytecode
+
+	private Chunk chunk() {
+		return current.function.chunk;
+	}
+
+	private void emitByte(int value) {
+		chunk().write((byte) value, line);
+	}
+
+	private void emitOp(byte op) {
+		chunk().write(op, line);
+		adjustStack(stackEffect(op));
+	}
+
+	// how many values op leaves on the stack less than it finds; calls also pop their arguments,
+	// which their emitters take off themselves
+	private static int stackEffect(byte op) {
+		switch (op) {
+		case OpCode.CONSTANT:
+		case OpCode.NIL:
+		case OpCode.TRUE:
+		case OpCode.FALSE:
+		case OpCode.GET_LOCAL:
+		case OpCode.GET_GLOBAL:
+		case OpCode.GET_UPVALUE:
+		case OpCode.CLOSURE:
+		case OpCode.CLASS:
+		case OpCode.LIST:
+			return 1;
+		case OpCode.POP:
+		case OpCode.DEFINE_GLOBAL:
+		case OpCode.CLOSE_UPVALUE:
+		case OpCode.SET_PROPERTY:
+		case OpCode.GET_SUPER:
+		case OpCode.EQUAL:
+		case OpCode.GREATER:
+		case OpCode.GREATER_EQUAL:
+		case OpCode.LESS:
+		case OpCode.LESS_EQUAL:
+		case OpCode.ADD:
+		case OpCode.SUBTRACT:
+		case OpCode.MULTIPLY:
+		case OpCode.DIVIDE:
+		case OpCode.PRINT:
+		case OpCode.SUPER_INVOKE: // the superclass
+		case OpCode.RETURN:
+		case OpCode.INHERIT:
+		case OpCode.METHOD:
+		case OpCode.LIST_APPEND:
+			return -1;
+		default:
+			return 0;
+		}
+	}
+
+	// follows the stack as the instructions are emitted; the frame is sized for its highest point
+	private void adjustStack(int effect) {
+		current.stackSize += effect;
+		if (current.stackSize > current.function.maxStackSize)
+			current.function.maxStackSize = current.stackSize;
+	}
+
+	private void emitShort(int value) {
+		emitByte((value >> 8) & 0xff);
+		emitByte(value & 0xff);
+	}
+
+	// initializers always return the instance in slot 0, everything else returns nichts
+	private void emitReturn() {
+		if (current.type == FunctionType.INITIALIZER) {
+			emitOp(OpCode.GET_LOCAL);
+			emitByte(0);
+		} else {
+			emitOp(OpCode.NIL);
+		}
+		emitOp(OpCode.RETURN);
+	}
+
+	private int makeConstant(Object value) {
+		int constant = chunk().addConstant(value);
+		if (constant > 0xffff) {
+			Lox.error(line, "Zu viele Konstanten in einem Chunk.");
+			return 0;
+		}
+		return constant;
+	}
+
+	// emits a jump with a placeholder offset and returns where to patch it
+	private int emitJump(byte op) {
+		emitOp(op);
+		emitByte(0xff);
+		emitByte(0xff);
+		current.jumpStackSizes.put(chunk().count - 2, current.stackSize);
+		return chunk().count - 2;
+	}
+
+	private void patchJump(int offset) {
+		// -2 to adjust for the bytecode of the jump offset itself
+		int jump = chunk().count - offset - 2;
+		if (jump > 0xffff) {
+			Lox.error(line, "Zu viel Code zum Überspringen.");
+		}
+
+		chunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+		chunk().code[offset + 1] = (byte) (jump & 0xff);
+		current.stackSize = current.jumpStackSizes.remove(offset);
+	}
+
+	private void emitLoop(int loopStart) {
+		emitOp(OpCode.LOOP);
+
+		int offset = chunk().count - loopStart + 2;
+		if (offset > 0xffff)
+			Lox.error(line, "Schleifenkörper zu groß.");
+
+		emitByte((offset >> 8) & 0xff);
+		emitByte(offset & 0xff);
+	}
+}
@@ -1,5 +1,7 @@
 package LOX;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 // can be called using a function
@@ -7,5 +9,22 @@ interface Callable {
 	int arity(); // number of parameters of a function
 
 	Object call(Interpreter interpreter, List<Object> arguments); // function call
-	
-}
\ No newline at end of file
+
+	// calls with the arguments passed one by one: call sites use these when the callee is not a
+	// Lox function, so a native that overrides them (see NativeRegistry) needs no argument list
+	default Object call0(Interpreter interpreter) {
+		return call(interpreter, Collections.emptyList());
+	}
+
+	default Object call1(Interpreter interpreter, Object a) {
+		return call(interpreter, Collections.singletonList(a));
+	}
+
+	default Object call2(Interpreter interpreter, Object a, Object b) {
+		return call(interpreter, Arrays.asList(a, b));
+	}
+
+	default Object callN(Interpreter interpreter, Object[] arguments) {
+		return call(interpreter, Arrays.asList(arguments));
+	}
+}
@@ -0,0 +1,73 @@
+package LOX;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// a sequence of bytecode together with its constant pool and line table
+class Chunk {
+	byte[] code = new byte[64];
+	int count = 0;
+	final List<Object> constants = new ArrayList<>();
+	// strings and numbers already in the pool, so every name is stored only once
+	private final Map<Object, Integer> shared = new HashMap<>();
+
+	// run-length encoded line table: the instructions from lineStarts[i] up to
+	// lineStarts[i + 1] were compiled from source line lines[i]
+	private int[] lineStarts = new int[8];
+	private int[] lines = new int[8];
+	private int lineCount = 0;
+
+	// append one byte, remembering which source line it came from
+	void write(byte value, int line) {
+		if (count == code.length) {
+			byte[] grown = new byte[code.length * 2];
+			System.arraycopy(code, 0, grown, 0, count);
+			code = grown;
+		}
+		code[count] = value;
+
+		if (lineCount == 0 || lines[lineCount - 1] != line) {
+			if (lineCount == lines.length) {
+				int[] grownStarts = new int[lineCount * 2];
+				int[] grownLines = new int[lineCount * 2];
+				System.arraycopy(lineStarts, 0, grownStarts, 0, lineCount);
+				System.arraycopy(lines, 0, grownLines, 0, lineCount);
+				lineStarts = grownStarts;
+				lines = grownLines;
+			}
+			lineStarts[lineCount] = count;
+			lines[lineCount] = line;
+			lineCount++;
+		}
+		count++;
+	}
+
+	// adds a value to the constant pool (strings and numbers are shared) and returns its index
+	int addConstant(Object value) {
+		if (value instanceof String || value instanceof Double) {
+			Integer existing = shared.get(value);
+			if (existing != null)
+				return existing;
+			shared.put(value, constants.size());
+		}
+		constants.add(value);
+		return constants.size() - 1;
+	}
+
+	// source line of the instruction at the given offset (only needed for error reporting)
+	int getLine(int offset) {
+		int low = 0;
+		int high = lineCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (lineStarts[mid] <= offset) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return lines[low];
+	}
+}
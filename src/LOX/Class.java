@@ -1,28 +1,37 @@
 package LOX;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 class Class implements Callable {
 	final String name;
 	final Class superclass;
+	// own and inherited methods, flattened when the class is created: one lookup, whatever the depth
 	private final Map<String, Function> methods;
+	// "init" and its arity, looked up once
+	private final Function initializer;
+	private final int arity;
+	// most fields an instance of this class has had so far: new instances allocate that many slots
+	int fieldCapacity = 0;
 
 	Class(String name, Class superclass, Map<String, Function> methods) {
 		this.superclass = superclass;
 		this.name = name;
-		this.methods = methods;
-	}
 
-	Function findMethod(String name) {
-		if (methods.containsKey(name)) {
-			return methods.get(name);
-		}
+		// the superclass's table is already flat, so copying it inherits the whole chain;
+		// the class's own methods then override what they redefine
+		Map<String, Function> table = new HashMap<>();
+		if (superclass != null)
+			table.putAll(superclass.methods);
+		table.putAll(methods);
+		this.methods = table;
 
-		if (superclass != null) {
-			return superclass.findMethod(name);
-		}
+		this.initializer = table.get("init");
+		this.arity = initializer == null ? 0 : initializer.arity();
+	}
 
-		return null;
+	Function findMethod(String name) {
+		return methods.get(name);
 	}
 
 	@Override
@@ -33,9 +42,8 @@ class Class implements Callable {
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
 		Instance instance = new Instance(this);
-		Function initializer = findMethod("init");
 		if (initializer != null) {
-			initializer.bind(instance).call(interpreter, arguments);
+			initializer.invoke(interpreter, instance, arguments);
 		}
 
 		return instance;
@@ -43,9 +51,6 @@ class Class implements Callable {
 
 	@Override
 	public int arity() {
-		Function initializer = findMethod("init");
-		if (initializer == null)
-			return 0;
-		return initializer.arity();
+		return arity;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,339 @@
+package LOX;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Just enough of a JVM class file writer for the JIT: a constant pool, static fields,
+ * and methods with a Code attribute. It writes class file version 49, which the JVM
+ * still verifies by type inference, so no StackMapTable has to be computed.
+ */
+final class ClassFile {
+	private static final int VERSION = 49;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private final String name;
+	private final String superName;
+	private final String[] interfaces;
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final Map<String, Integer> poolIndex = new HashMap<>();
+	private int poolCount = 1;
+
+	private final List<byte[]> fields = new ArrayList<>();
+	private final List<byte[]> methods = new ArrayList<>();
+
+	ClassFile(String name, String superName, String... interfaces) {
+		this.name = name;
+		this.superName = superName;
+		this.interfaces = interfaces;
+	}
+
+	// Constant pool, deduplicated by a key per entry
+
+	private interface Entry {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private int constant(String key, int slots, Entry entry) {
+		Integer index = poolIndex.get(key);
+		if (index != null)
+			return index;
+
+		try {
+			entry.write(poolOut);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		index = poolCount;
+		poolCount += slots; // long and double entries take two
+		poolIndex.put(key, index);
+		return index;
+	}
+
+	int utf8(String value) {
+		return constant("U" + value, 1, out -> {
+			out.writeByte(1);
+			out.writeUTF(value);
+		});
+	}
+
+	int classRef(String internalName) {
+		int nameIndex = utf8(internalName);
+		return constant("C" + internalName, 1, out -> {
+			out.writeByte(7);
+			out.writeShort(nameIndex);
+		});
+	}
+
+	int string(String value) {
+		int valueIndex = utf8(value);
+		return constant("S" + value, 1, out -> {
+			out.writeByte(8);
+			out.writeShort(valueIndex);
+		});
+	}
+
+	int integer(int value) {
+		return constant("I" + value, 1, out -> {
+			out.writeByte(3);
+			out.writeInt(value);
+		});
+	}
+
+	int doubleConstant(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		return constant("D" + bits, 2, out -> {
+			out.writeByte(6);
+			out.writeLong(bits);
+		});
+	}
+
+	private int nameAndType(String memberName, String descriptor) {
+		int nameIndex = utf8(memberName);
+		int typeIndex = utf8(descriptor);
+		return constant("N" + memberName + ":" + descriptor, 1, out -> {
+			out.writeByte(12);
+			out.writeShort(nameIndex);
+			out.writeShort(typeIndex);
+		});
+	}
+
+	private int memberRef(int tag, String owner, String memberName, String descriptor) {
+		int ownerIndex = classRef(owner);
+		int typeIndex = nameAndType(memberName, descriptor);
+		return constant(tag + owner + "." + memberName + ":" + descriptor, 1, out -> {
+			out.writeByte(tag);
+			out.writeShort(ownerIndex);
+			out.writeShort(typeIndex);
+		});
+	}
+
+	int fieldRef(String owner, String fieldName, String descriptor) {
+		return memberRef(9, owner, fieldName, descriptor);
+	}
+
+	int methodRef(String owner, String methodName, String descriptor) {
+		return memberRef(10, owner, methodName, descriptor);
+	}
+
+	int interfaceMethodRef(String owner, String methodName, String descriptor) {
+		return memberRef(11, owner, methodName, descriptor);
+	}
+
+	// Members
+
+	void addStaticField(String fieldName, String descriptor) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(ACC_STATIC);
+			out.writeShort(utf8(fieldName));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(0); // no attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	void addMethod(boolean isStatic, String methodName, String descriptor, Code code) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(ACC_PUBLIC | (isStatic ? ACC_STATIC : 0));
+			out.writeShort(utf8(methodName));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1); // one attribute: Code
+
+			byte[] body = code.toBytes();
+			out.writeShort(utf8("Code"));
+			out.writeInt(2 + 2 + 4 + body.length + 2 + 8 * code.handlers.size() + 2);
+			out.writeShort(code.maxStack);
+			out.writeShort(code.maxLocals);
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeShort(code.handlers.size());
+			for (int[] handler : code.handlers) {
+				out.writeShort(code.labels.get(handler[0]));
+				out.writeShort(code.labels.get(handler[1]));
+				out.writeShort(code.labels.get(handler[2]));
+				out.writeShort(handler[3]);
+			}
+			out.writeShort(0); // no attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	byte[] toBytes() {
+		// resolve the class entries before the pool is written out
+		int thisIndex = classRef(name);
+		int superIndex = classRef(superName);
+		int[] interfaceIndexes = new int[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaceIndexes[i] = classRef(interfaces[i]);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount);
+			out.write(pool.toByteArray());
+			out.writeShort(ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisIndex);
+			out.writeShort(superIndex);
+			out.writeShort(interfaceIndexes.length);
+			for (int index : interfaceIndexes) {
+				out.writeShort(index);
+			}
+			out.writeShort(fields.size());
+			for (byte[] field : fields) {
+				out.write(field);
+			}
+			out.writeShort(methods.size());
+			for (byte[] method : methods) {
+				out.write(method);
+			}
+			out.writeShort(0); // no class attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/*
+	 * The instructions of one method. Callers pass each instruction's effect on the
+	 * operand stack, so the writer knows max_stack; jumps go to labels that are
+	 * patched once the method is complete.
+	 */
+	static final class Code {
+		// the JVM opcodes the JIT emits
+		static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04, BIPUSH = 0x10, SIPUSH = 0x11,
+				LDC_W = 0x13, LDC2_W = 0x14, DLOAD = 0x18, ALOAD = 0x19, DSTORE = 0x39, ASTORE = 0x3a,
+				AASTORE = 0x53, POP = 0x57, POP2 = 0x58, DUP = 0x59, DUP_X1 = 0x5a, DUP2 = 0x5c,
+				DUP2_X1 = 0x5d, DUP2_X2 = 0x5e, SWAP = 0x5f, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f,
+				DNEG = 0x77, IXOR = 0x82, DCMPL = 0x97, DCMPG = 0x98, IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b,
+				IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e, IF_ACMPNE = 0xa6, GOTO = 0xa7, ARETURN = 0xb0,
+				RETURN = 0xb1, GETSTATIC = 0xb2, PUTSTATIC = 0xb3, INVOKESPECIAL = 0xb7,
+				INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9, ANEWARRAY = 0xbd, ATHROW = 0xbf, CHECKCAST = 0xc0;
+
+		private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+		private final List<Integer> labels = new ArrayList<>(); // label -> position, -1 until placed
+		private final List<int[]> jumps = new ArrayList<>(); // {position of the opcode, label}
+		private final List<int[]> handlers = new ArrayList<>(); // {start, end, handler label, class}
+		private int stack = 0;
+		int maxStack = 0;
+		int maxLocals;
+
+		Code(int maxLocals) {
+			this.maxLocals = maxLocals;
+		}
+
+		// an instruction without operands, changing the stack depth by delta
+		void op(int opcode, int delta) {
+			code.write(opcode);
+			adjust(delta);
+		}
+
+		// an instruction with a one-byte operand
+		void op1(int opcode, int operand, int delta) {
+			code.write(opcode);
+			code.write(operand);
+			adjust(delta);
+		}
+
+		// an instruction with a two-byte operand (constant pool index or short)
+		void op2(int opcode, int operand, int delta) {
+			code.write(opcode);
+			code.write(operand >> 8);
+			code.write(operand);
+			adjust(delta);
+		}
+
+		void invokeInterface(int methodIndex, int argumentSlots, int delta) {
+			op2(INVOKEINTERFACE, methodIndex, delta);
+			code.write(argumentSlots + 1);
+			code.write(0);
+		}
+
+		// loads or stores local slot; wide indexes are not needed, the JIT gives up before
+		void local(int opcode, int slot, int delta) {
+			if (slot > 255)
+				throw new JitCompiler.Unsupported("zu viele lokale Variablen");
+			op1(opcode, slot, delta);
+			maxLocals = Math.max(maxLocals, slot + (opcode == DLOAD || opcode == DSTORE ? 2 : 1));
+		}
+
+		void pushInt(int value) {
+			if (value == 0 || value == 1) {
+				op(ICONST_0 + value, 1);
+			} else if (value >= -128 && value <= 127) {
+				op1(BIPUSH, value & 0xff, 1);
+			} else {
+				op2(SIPUSH, value, 1);
+			}
+		}
+
+		int newLabel() {
+			labels.add(-1);
+			return labels.size() - 1;
+		}
+
+		void place(int label) {
+			labels.set(label, code.size());
+		}
+
+		// a jump; delta is what the jump itself pops (e.g. -1 for ifeq, 0 for goto)
+		void jump(int opcode, int label, int delta) {
+			jumps.add(new int[] { code.size(), label });
+			op2(opcode, 0, delta);
+		}
+
+		// exceptions of class (a constant pool index) thrown from start up to end go to handler,
+		// which starts with only the exception on the stack
+		void handler(int start, int end, int handler, int exceptionClass) {
+			handlers.add(new int[] { start, end, handler, exceptionClass });
+		}
+
+		// after an unconditional jump or return, the code that follows is reached by a jump,
+		// with the stack depth the jump left
+		void setStack(int depth) {
+			stack = depth;
+		}
+
+		int stack() {
+			return stack;
+		}
+
+		private void adjust(int delta) {
+			stack += delta;
+			maxStack = Math.max(maxStack, stack);
+		}
+
+		byte[] toBytes() {
+			byte[] bytes = code.toByteArray();
+			if (bytes.length > Short.MAX_VALUE)
+				throw new JitCompiler.Unsupported("Methode zu groß");
+			for (int[] jump : jumps) {
+				int offset = labels.get(jump[1]) - jump[0];
+				bytes[jump[0] + 1] = (byte) (offset >> 8);
+				bytes[jump[0] + 2] = (byte) offset;
+			}
+			return bytes;
+		}
+	}
+}
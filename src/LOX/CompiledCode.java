@@ -0,0 +1,8 @@
+package LOX;
+
+import java.util.List;
+
+// a function body compiled to JVM bytecode by the JitCompiler
+interface CompiledCode {
+	Object call(Interpreter interpreter, List<Object> arguments);
+}
@@ -1,68 +1,134 @@
 package LOX;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
-// Chains Hashmaps to point towards one another
-// Global Environment (values)
-//		└──> Block Environment (HashMap, points to Global)
-//				└──> Function Environment (HashMap, points to Block)
+// Chains environments to point towards one another
+// Global Environment (array: values by symbol id)
+//		└──> Block Environment (array of slots, points to Global)
+//				└──> Function Environment (array of slots, points to Block)
+// Only the global scope is looked up by name, through the id Symbols gave it. Every local scope is a frame of slots:
+// the Resolver gives each local variable a (depth, slot) pair, so reading it is an indexed load.
+// A local that holds a number can be stored unboxed: its slot then holds UNBOXED and
+// the value sits at the same index of a parallel double[] (allocated on first use).
 class Environment {
+	private static final Object[] EMPTY = new Object[0];
+	// slot marker: the value is numbers[slot]
+	private static final Object UNBOXED = new Object();
+	// global slot marker: no variable of that name is defined
+	private static final Object UNDEFINED = new Object();
+
 	// References the higher level (parent) environment
 	final Environment enclosing;
-	// main data structure storing variable names and their values. 
-	// each environment has its own HashMap to store variables defined in that scope.
-	private final Map<String, Object> values = new HashMap<>();
+	// global scope only: values by symbol id, UNDEFINED where no global of that name exists
+	// (globals can be defined late, e.g. in the REPL, so it grows as names are defined)
+	private Object[] values;
+	// local scopes only: values in the order the Resolver numbered their declarations
+	private Object[] slots;
+	private double[] numbers = null;
+	private int count = 0;
 
 	// default constructor: global scope
 	Environment() {
 		enclosing = null;
+		values = new Object[64];
+		Arrays.fill(values, UNDEFINED);
+		slots = null;
 	}
 
 	// constructor for creating a nested environment
 	Environment(Environment enclosing) {
+		this(enclosing, 0);
+	}
+
+	// nested environment with room for a known number of slots (e.g. the parameters of a call)
+	Environment(Environment enclosing, int capacity) {
 		this.enclosing = enclosing;
+		this.values = null;
+		this.slots = capacity == 0 ? EMPTY : new Object[capacity];
 	}
 
 	// define a new variable in the current scope/ environment
+	// locals are declared in the same order the Resolver numbered them, so the next free slot is theirs
 	void define(String name, Object value) {
-		/*
-		 * if (values.containsKey(name.lexeme)) { throw new RuntimeError(name,
-		 * "Variable '" + name.lexeme + "' already declared in this scope."); }
-		 */
-		values.put(name, value);
+		if (values != null) {
+			defineGlobal(Symbols.intern(name), value);
+			return;
+		}
+
+		if (count == slots.length)
+			grow();
+		slots[count++] = value;
 	}
 
-	// Retrieve the value of a variable by its token (if found inside the current scope)
-	// currentEnv → enclosing → enclosing → ... until found or null
-	Object get(Token name) {
-		if (values.containsKey(name.lexeme)) {
-			return values.get(name.lexeme);
+	// defines a variable holding a number; a local one stores it unboxed
+	void defineNumber(String name, double value) {
+		if (values != null) {
+			defineGlobal(Symbols.intern(name), value);
+			return;
+		}
+
+		if (count == slots.length)
+			grow();
+		assignLocalNumber(count++, value);
+	}
+
+	private void grow() {
+		int capacity = Math.max(4, count * 2);
+		Object[] grown = new Object[capacity];
+		System.arraycopy(slots, 0, grown, 0, count);
+		slots = grown;
+		if (numbers != null) {
+			double[] grownNumbers = new double[capacity];
+			System.arraycopy(numbers, 0, grownNumbers, 0, count);
+			numbers = grownNumbers;
 		}
+	}
 
-		if (enclosing != null)
-			return enclosing.get(name);
+	private void defineGlobal(int symbol, Object value) {
+		if (symbol >= values.length) {
+			int length = values.length;
+			values = Arrays.copyOf(values, Math.max(symbol + 1, length * 2));
+			Arrays.fill(values, length, values.length, UNDEFINED);
+		}
+		values[symbol] = value;
+	}
 
-		throw new RuntimeError(name, "Undefinierte Variable '" + name.lexeme + "'.");
+	// Retrieve the value of a global variable by its token
+	Object get(Token name) {
+		return get(name.symbol, name.line);
 	}
 
-	// Assign a new value to an existing variable (if found in the current environment)
-	void assign(Token name, Object value) {
-		if (values.containsKey(name.lexeme)) {
-			values.put(name.lexeme, value);
-			return;
+	// Retrieve the value of a global variable by the symbol id of its name
+	Object get(int symbol, int line) {
+		if (symbol < values.length && values[symbol] != UNDEFINED) {
+			return values[symbol];
 		}
 
-		if (enclosing != null) {
-			enclosing.assign(name, value);
+		throw undefined(symbol, line);
+	}
+
+	// Assign a new value to an existing global variable
+	void assign(Token name, Object value) {
+		assign(name.symbol, value, name.line);
+	}
+
+	void assign(int symbol, Object value, int line) {
+		if (symbol < values.length && values[symbol] != UNDEFINED) {
+			values[symbol] = value;
 			return;
 		}
 
-		throw new RuntimeError(name, "Undefinierte Variable '" + name.lexeme + "'.");
+		throw undefined(symbol, line);
+	}
+
+	private static RuntimeError undefined(int symbol, int line) {
+		String name = Symbols.name(symbol);
+		return new RuntimeError(new Token(TokenType.IDENTIFIER, name, null, line, symbol),
+				"Undefinierte Variable '" + name + "'.");
 	}
-	
+
 	// returns the environment at a specific distance up the environment chain
 	// Distance 0 = current environment
-    // Distance 1 = enclosing environment  
+    // Distance 1 = enclosing environment
     //  Distance 2 = enclosing.enclosing environment etc.
 	Environment ancestor(int distance) {
 		Environment environment = this;
@@ -73,13 +139,52 @@ class Environment {
 		return environment;
 	}
 
-	// gets a variable's value at a specific distance in the environment chain.
-	Object getAt(int distance, String name) {
-		return ancestor(distance).values.get(name);
+	// gets a local variable's value from its slot in this frame (boxing an unboxed number)
+	Object getLocal(int slot) {
+		Object value = slots[slot];
+		if (value == UNBOXED)
+			return numbers[slot];
+		return value;
+	}
+
+	// gets a local variable's value as a number; throws UnexpectedResult if it holds something else
+	double getLocalNumber(int slot) {
+		Object value = slots[slot];
+		if (value == UNBOXED)
+			return numbers[slot];
+		if (value instanceof Double)
+			return (double) value;
+		throw new UnexpectedResult(value);
+	}
+
+	// sets a local variable's value in its slot in this frame
+	void assignLocal(int slot, Object value) {
+		slots[slot] = value;
 	}
-	
-	// sets a variable's value at a specific distance in the environment chain.
-	void assignAt(int distance, Token name, Object value) {
-	    ancestor(distance).values.put(name.lexeme, value);
+
+	// sets a local variable to a number, without boxing it
+	void assignLocalNumber(int slot, double value) {
+		if (numbers == null)
+			numbers = new double[slots.length];
+		numbers[slot] = value;
+		slots[slot] = UNBOXED;
+	}
+
+	// gets a local variable's value from its slot at a specific distance in the environment chain.
+	Object getAt(int distance, int slot) {
+		return ancestor(distance).getLocal(slot);
+	}
+
+	double getNumberAt(int distance, int slot) {
+		return ancestor(distance).getLocalNumber(slot);
+	}
+
+	// sets a local variable's value in its slot at a specific distance in the environment chain.
+	void assignAt(int distance, int slot, Object value) {
+	    ancestor(distance).slots[slot] = value;
+	}
+
+	void assignNumberAt(int distance, int slot, double value) {
+		ancestor(distance).assignLocalNumber(slot, value);
 	}
-}
\ No newline at end of file
+}
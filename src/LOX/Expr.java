@@ -16,6 +16,7 @@ abstract class Expr {
     R visitLogicalExpr(Logical expr);
     R visitUnaryExpr(Unary expr);
     R visitVariableExpr(Variable expr);
+    R visitListLiteralExpr(ListLiteral expr);
   }
   static class Call extends Expr {
     Call(Expr callee, Token paren, List<Expr> arguments) {
@@ -185,6 +186,20 @@ abstract class Expr {
 
     final Token name;
   }
+  static class ListLiteral extends Expr {
+    ListLiteral(Token bracket, List<Expr> elements) {
+      this.bracket = bracket;
+      this.elements = elements;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitListLiteralExpr(this);
+    }
+
+    final Token bracket;
+    final List<Expr> elements;
+  }
 
   abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,1099 @@
+package LOX;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// executable expression, built once from a resolved Expr by the NodeCompiler
+// every node already knows its operator, slot or callee shape, so evaluating it
+// never looks at token types or the Resolver's side table again
+abstract class ExprNode {
+	abstract Object evaluate(Environment environment);
+
+	// evaluates to a number without boxing it
+	// throws UnexpectedResult (carrying the value) if the result is not a number
+	double evaluateNumber(Environment environment) {
+		Object value = evaluate(environment);
+		if (value instanceof Double)
+			return (double) value;
+		throw new UnexpectedResult(value);
+	}
+
+	// evaluates as a condition: wenn, während, !, und, oder
+	boolean evaluateTruthy(Environment environment) {
+		return Interpreter.isTruthy(evaluate(environment));
+	}
+
+	// evaluates an expression statement, whose value nobody uses (so it need not be boxed)
+	void evaluateForEffect(Environment environment) {
+		evaluate(environment);
+	}
+
+	// evaluates the value of a zurückgeben; a call of a Lox function is only prepared, and
+	// Function.TAIL_CALL is returned instead of its result
+	Object evaluateTail(Environment environment) {
+		return evaluate(environment);
+	}
+
+	// Literals and variables
+
+	static final class Constant extends ExprNode {
+		final Object value;
+		private final boolean isNumber;
+		private final double number; // the value unboxed once, if it is a number
+		private final boolean truthy;
+
+		Constant(Object value) {
+			this.value = value;
+			this.isNumber = value instanceof Double;
+			this.number = isNumber ? (double) value : 0;
+			this.truthy = Interpreter.isTruthy(value);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return value;
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			if (isNumber)
+				return number;
+			throw new UnexpectedResult(value);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			return truthy;
+		}
+	}
+
+	// a local in the innermost frame
+	static final class Local extends ExprNode {
+		final int slot;
+
+		Local(int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return environment.getLocal(slot);
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			return environment.getLocalNumber(slot);
+		}
+	}
+
+	// a local in an enclosing frame
+	static final class EnclosingLocal extends ExprNode {
+		final int depth;
+		final int slot;
+
+		EnclosingLocal(int depth, int slot) {
+			this.depth = depth;
+			this.slot = slot;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return environment.getAt(depth, slot);
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			return environment.getNumberAt(depth, slot);
+		}
+	}
+
+	static final class Global extends ExprNode {
+		final Environment globals;
+		final Token name;
+
+		Global(Environment globals, Token name) {
+			this.globals = globals;
+			this.name = name;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return globals.get(name);
+		}
+	}
+
+	// Assignments to locals store numbers unboxed until a value turns out not to be a number;
+	// from then on they store every value boxed.
+
+	static final class AssignLocal extends ExprNode {
+		final int slot;
+		final ExprNode value;
+		private boolean numbers = true;
+
+		AssignLocal(int slot, ExprNode value) {
+			this.slot = slot;
+			this.value = value;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			if (numbers) {
+				try {
+					return assignNumber(environment);
+				} catch (UnexpectedResult result) {
+					return deoptimize(environment, result.value);
+				}
+			}
+			Object result = value.evaluate(environment);
+			environment.assignLocal(slot, result);
+			return result;
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			if (numbers) {
+				try {
+					return assignNumber(environment);
+				} catch (UnexpectedResult result) {
+					throw new UnexpectedResult(deoptimize(environment, result.value));
+				}
+			}
+			return super.evaluateNumber(environment);
+		}
+
+		@Override
+		void evaluateForEffect(Environment environment) {
+			if (numbers) {
+				try {
+					assignNumber(environment);
+				} catch (UnexpectedResult result) {
+					deoptimize(environment, result.value);
+				}
+				return;
+			}
+			environment.assignLocal(slot, value.evaluate(environment));
+		}
+
+		private double assignNumber(Environment environment) {
+			double result = value.evaluateNumber(environment);
+			environment.assignLocalNumber(slot, result);
+			return result;
+		}
+
+		private Object deoptimize(Environment environment, Object result) {
+			numbers = false;
+			environment.assignLocal(slot, result);
+			return result;
+		}
+	}
+
+	static final class AssignEnclosing extends ExprNode {
+		final int depth;
+		final int slot;
+		final ExprNode value;
+		private boolean numbers = true;
+
+		AssignEnclosing(int depth, int slot, ExprNode value) {
+			this.depth = depth;
+			this.slot = slot;
+			this.value = value;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			if (numbers) {
+				try {
+					return assignNumber(environment);
+				} catch (UnexpectedResult result) {
+					return deoptimize(environment, result.value);
+				}
+			}
+			Object result = value.evaluate(environment);
+			environment.assignAt(depth, slot, result);
+			return result;
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			if (numbers) {
+				try {
+					return assignNumber(environment);
+				} catch (UnexpectedResult result) {
+					throw new UnexpectedResult(deoptimize(environment, result.value));
+				}
+			}
+			return super.evaluateNumber(environment);
+		}
+
+		@Override
+		void evaluateForEffect(Environment environment) {
+			if (numbers) {
+				try {
+					assignNumber(environment);
+				} catch (UnexpectedResult result) {
+					deoptimize(environment, result.value);
+				}
+				return;
+			}
+			environment.assignAt(depth, slot, value.evaluate(environment));
+		}
+
+		private double assignNumber(Environment environment) {
+			double result = value.evaluateNumber(environment);
+			environment.assignNumberAt(depth, slot, result);
+			return result;
+		}
+
+		private Object deoptimize(Environment environment, Object result) {
+			numbers = false;
+			environment.assignAt(depth, slot, result);
+			return result;
+		}
+	}
+
+	static final class AssignGlobal extends ExprNode {
+		final Environment globals;
+		final Token name;
+		final ExprNode value;
+
+		AssignGlobal(Environment globals, Token name, ExprNode value) {
+			this.globals = globals;
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			Object result = value.evaluate(environment);
+			globals.assign(name, result);
+			return result;
+		}
+	}
+
+	// Operators: one node class per operator
+	// Operands are evaluated with evaluateNumber, so a tree like a * b + c passes primitive
+	// doubles between its nodes and only boxes the final result.
+
+	abstract static class BinaryNode extends ExprNode {
+		final ExprNode left;
+		final Token operator;
+		final ExprNode right;
+
+		BinaryNode(ExprNode left, Token operator, ExprNode right) {
+			this.left = left;
+			this.operator = operator;
+			this.right = right;
+		}
+
+		// the left operand was not a number: the right one is still evaluated before the error
+		final RuntimeError leftNotNumber(Environment environment) {
+			right.evaluate(environment);
+			return numbersExpected();
+		}
+
+		final RuntimeError numbersExpected() {
+			return new RuntimeError(operator, "Operanden müssen Zahlen sein.");
+		}
+	}
+
+	// + specializes itself on the operand types it sees first: numbers or strings.
+	// When the guard of that specialization fails it deoptimizes for good to the generic version.
+	static final class Add extends BinaryNode {
+		private static final byte UNINITIALIZED = 0;
+		private static final byte NUMBERS = 1;
+		private static final byte STRINGS = 2;
+		private static final byte GENERIC = 3;
+
+		private byte state = UNINITIALIZED;
+
+		Add(ExprNode left, Token operator, ExprNode right) {
+			super(left, operator, right);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			if (state != NUMBERS)
+				return evaluateUnspecialized(environment);
+
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				return deoptimize(result.value, right.evaluate(environment));
+			}
+			try {
+				return a + right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				return deoptimize(a, result.value);
+			}
+		}
+
+		// kept out of evaluate, so the number case stays small enough to be inlined by the JVM
+		private Object evaluateUnspecialized(Environment environment) {
+			Object a = left.evaluate(environment);
+			Object b = right.evaluate(environment);
+			if (state == STRINGS) {
+				if (Rope.isString(a) && Rope.isString(b))
+					return concat(a, b);
+				return deoptimize(a, b);
+			}
+			if (state == UNINITIALIZED) {
+				if (a instanceof Double && b instanceof Double) {
+					state = NUMBERS;
+				} else if (Rope.isString(a) && Rope.isString(b)) {
+					state = STRINGS;
+				} else {
+					state = GENERIC;
+				}
+			}
+			return generic(a, b);
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			if (state != NUMBERS)
+				return super.evaluateNumber(environment);
+
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw new UnexpectedResult(deoptimize(result.value, right.evaluate(environment)));
+			}
+			try {
+				return a + right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw new UnexpectedResult(deoptimize(a, result.value));
+			}
+		}
+
+		private Object deoptimize(Object a, Object b) {
+			state = GENERIC;
+			return generic(a, b);
+		}
+
+		private Object generic(Object a, Object b) {
+			if (a instanceof Double && b instanceof Double)
+				return (double) a + (double) b;
+			if (Rope.isString(a) && Rope.isString(b))
+				return concat(a, b);
+			throw new RuntimeError(operator, "Operanden müssen zwei Zahlen oder zwei Zeichenketten sein.");
+		}
+
+		private Object concat(Object a, Object b) {
+			if (!Rope.fits(a, b))
+				throw new RuntimeError(operator, "Zeichenkette zu lang.");
+			return Rope.concat(a, b);
+		}
+	}
+
+	static final class Subtract extends BinaryNode {
+		Subtract(ExprNode left, Token operator, ExprNode right) {
+			super(left, operator, right);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateNumber(environment);
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw leftNotNumber(environment);
+			}
+			try {
+				return a - right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw numbersExpected();
+			}
+		}
+	}
+
+	static final class Multiply extends BinaryNode {
+		Multiply(ExprNode left, Token operator, ExprNode right) {
+			super(left, operator, right);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateNumber(environment);
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw leftNotNumber(environment);
+			}
+			try {
+				return a * right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw numbersExpected();
+			}
+		}
+	}
+
+	static final class Divide extends BinaryNode {
+		Divide(ExprNode left, Token operator, ExprNode right) {
+			super(left, operator, right);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateNumber(environment);
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw leftNotNumber(environment);
+			}
+			try {
+				return a / right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw numbersExpected();
+			}
+		}
+	}
+
+	static final class Greater extends BinaryNode {
+		Greater(ExprNode left, Token operator, ExprNode right) {
+			super(left, operator, right);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateTruthy(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw leftNotNumber(environment);
+			}
+			try {
+				return a > right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw numbersExpected();
+			}
+		}
+	}
+
+	static final class GreaterEqual extends BinaryNode {
+		GreaterEqual(ExprNode left, Token operator, ExprNode right) {
+			super(left, operator, right);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateTruthy(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw leftNotNumber(environment);
+			}
+			try {
+				return a >= right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw numbersExpected();
+			}
+		}
+	}
+
+	static final class Less extends BinaryNode {
+		Less(ExprNode left, Token operator, ExprNode right) {
+			super(left, operator, right);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateTruthy(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw leftNotNumber(environment);
+			}
+			try {
+				return a < right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw numbersExpected();
+			}
+		}
+	}
+
+	// i < n on two locals of the innermost frame: the shape of most loop conditions
+	static final class LessLocals extends ExprNode {
+		final int leftSlot;
+		final Token operator;
+		final int rightSlot;
+
+		LessLocals(int leftSlot, Token operator, int rightSlot) {
+			this.leftSlot = leftSlot;
+			this.operator = operator;
+			this.rightSlot = rightSlot;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateTruthy(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			try {
+				return environment.getLocalNumber(leftSlot) < environment.getLocalNumber(rightSlot);
+			} catch (UnexpectedResult result) {
+				throw new RuntimeError(operator, "Operanden müssen Zahlen sein.");
+			}
+		}
+	}
+
+	// i < 10 on a local of the innermost frame and a number literal
+	static final class LessLocalConstant extends ExprNode {
+		final int slot;
+		final Token operator;
+		final double constant;
+
+		LessLocalConstant(int slot, Token operator, double constant) {
+			this.slot = slot;
+			this.operator = operator;
+			this.constant = constant;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateTruthy(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			try {
+				return environment.getLocalNumber(slot) < constant;
+			} catch (UnexpectedResult result) {
+				throw new RuntimeError(operator, "Operanden müssen Zahlen sein.");
+			}
+		}
+	}
+
+	static final class LessEqual extends BinaryNode {
+		LessEqual(ExprNode left, Token operator, ExprNode right) {
+			super(left, operator, right);
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateTruthy(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			double a;
+			try {
+				a = left.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw leftNotNumber(environment);
+			}
+			try {
+				return a <= right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw numbersExpected();
+			}
+		}
+	}
+
+	// == and != specialize on numbers (compared like Double.equals, without boxing)
+	// and deoptimize to isEqual on any other operand
+	static final class Equal extends BinaryNode {
+		private final boolean negated; // true for !=
+		private boolean numbers = true;
+
+		Equal(ExprNode left, Token operator, ExprNode right, boolean negated) {
+			super(left, operator, right);
+			this.negated = negated;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateTruthy(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			if (numbers) {
+				double a;
+				try {
+					a = left.evaluateNumber(environment);
+				} catch (UnexpectedResult result) {
+					numbers = false;
+					return Interpreter.isEqual(result.value, right.evaluate(environment)) != negated;
+				}
+				try {
+					double b = right.evaluateNumber(environment);
+					return (Double.doubleToLongBits(a) == Double.doubleToLongBits(b)) != negated;
+				} catch (UnexpectedResult result) {
+					numbers = false;
+					return Interpreter.isEqual(a, result.value) != negated;
+				}
+			}
+			return Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment)) != negated;
+		}
+	}
+
+	static final class And extends ExprNode {
+		final ExprNode left;
+		final ExprNode right;
+
+		And(ExprNode left, ExprNode right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			Object value = left.evaluate(environment);
+			if (!Interpreter.isTruthy(value))
+				return value;
+			return right.evaluate(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			return left.evaluateTruthy(environment) && right.evaluateTruthy(environment);
+		}
+	}
+
+	static final class Or extends ExprNode {
+		final ExprNode left;
+		final ExprNode right;
+
+		Or(ExprNode left, ExprNode right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			Object value = left.evaluate(environment);
+			if (Interpreter.isTruthy(value))
+				return value;
+			return right.evaluate(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			return left.evaluateTruthy(environment) || right.evaluateTruthy(environment);
+		}
+	}
+
+	static final class Negate extends ExprNode {
+		final Token operator;
+		final ExprNode right;
+
+		Negate(Token operator, ExprNode right) {
+			this.operator = operator;
+			this.right = right;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return evaluateNumber(environment);
+		}
+
+		@Override
+		double evaluateNumber(Environment environment) {
+			try {
+				return -right.evaluateNumber(environment);
+			} catch (UnexpectedResult result) {
+				throw new RuntimeError(operator, "Operand muss eine Zahl sein.");
+			}
+		}
+	}
+
+	static final class Not extends ExprNode {
+		final ExprNode right;
+
+		Not(ExprNode right) {
+			this.right = right;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return !right.evaluateTruthy(environment);
+		}
+
+		@Override
+		boolean evaluateTruthy(Environment environment) {
+			return !right.evaluateTruthy(environment);
+		}
+	}
+
+	// [a, b, ...]: while the list holds only numbers, they go into it without being boxed
+	static final class ListLiteral extends ExprNode {
+		final ExprNode[] elements;
+
+		ListLiteral(ExprNode[] elements) {
+			this.elements = elements;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			LoxList list = new LoxList(elements.length);
+			for (ExprNode element : elements) {
+				if (!list.isNumeric()) {
+					list.add(element.evaluate(environment));
+					continue;
+				}
+				try {
+					list.addNumber(element.evaluateNumber(environment));
+				} catch (UnexpectedResult result) {
+					list.add(result.value);
+				}
+			}
+			return list;
+		}
+	}
+
+	// Calls and objects
+
+	static final class Call extends ExprNode {
+		final Interpreter interpreter;
+		final ExprNode callee;
+		final Token paren;
+		final ExprNode[] arguments;
+
+		Call(Interpreter interpreter, ExprNode callee, Token paren, ExprNode[] arguments) {
+			this.interpreter = interpreter;
+			this.callee = callee;
+			this.paren = paren;
+			this.arguments = arguments;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return call(interpreter, callee.evaluate(environment), paren, arguments, environment, false);
+		}
+
+		@Override
+		Object evaluateTail(Environment environment) {
+			return call(interpreter, callee.evaluate(environment), paren, arguments, environment, true);
+		}
+
+		// calls any value; also used by Invoke when the property is a field holding a function
+		static Object call(Interpreter interpreter, Object value, Token paren, ExprNode[] arguments,
+				Environment environment, boolean tail) {
+			if (!(value instanceof Callable)) {
+				throw new RuntimeError(paren, "Kann nur Funktionen und Klassen aufrufen.");
+			}
+
+			Callable function = (Callable) value;
+			if (!(function instanceof Function)) {
+				try {
+					return callDirect(interpreter, function, paren, arguments, environment);
+				} catch (Builtins.NativeError error) {
+					throw new RuntimeError(paren, error.getMessage());
+				} catch (StackOverflowError error) {
+					throw stackOverflow(paren);
+				}
+			}
+
+			List<Object> values = evaluateArguments(arguments, environment);
+			checkArity(paren, function.arity(), values.size());
+			if (tail)
+				return ((Function) function).tailCall(interpreter, values);
+			try {
+				return function.call(interpreter, values);
+			} catch (StackOverflowError error) {
+				throw stackOverflow(paren);
+			}
+		}
+
+		// natives and classes: up to two arguments are passed one by one, without a List
+		private static Object callDirect(Interpreter interpreter, Callable function, Token paren,
+				ExprNode[] arguments, Environment environment) {
+			switch (arguments.length) {
+			case 0:
+				checkArity(paren, function.arity(), 0);
+				return function.call0(interpreter);
+			case 1: {
+				Object a = arguments[0].evaluate(environment);
+				checkArity(paren, function.arity(), 1);
+				return function.call1(interpreter, a);
+			}
+			case 2: {
+				Object a = arguments[0].evaluate(environment);
+				Object b = arguments[1].evaluate(environment);
+				checkArity(paren, function.arity(), 2);
+				return function.call2(interpreter, a, b);
+			}
+			default: {
+				Object[] values = new Object[arguments.length];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = arguments[i].evaluate(environment);
+				}
+				checkArity(paren, function.arity(), values.length);
+				return function.callN(interpreter, values);
+			}
+			}
+		}
+
+		// the Java stack ran out in a deep recursion: a runtime error at the innermost call that
+		// still has the stack to report it (--vm keeps its call stack on the heap instead)
+		static RuntimeError stackOverflow(Token paren) {
+			return new RuntimeError(paren, "Stapelüberlauf.");
+		}
+
+		static List<Object> evaluateArguments(ExprNode[] arguments, Environment environment) {
+			List<Object> values = new ArrayList<>(arguments.length);
+			for (ExprNode argument : arguments) {
+				values.add(argument.evaluate(environment));
+			}
+			return values;
+		}
+
+		static void checkArity(Token paren, int arity, int count) {
+			if (count != arity) {
+				throw new RuntimeError(paren, "Erwartet " + arity + " Argumente, aber erhalten " + count + ".");
+			}
+		}
+	}
+
+	static final class Get extends ExprNode {
+		final ExprNode object;
+		final Token name;
+		private final MethodCache methods;
+		// the last shape seen here and the field's offset in it (-1: that shape lacks the field)
+		private Shape cachedShape = null;
+		private int cachedOffset;
+
+		Get(ExprNode object, Token name) {
+			this.object = object;
+			this.name = name;
+			this.methods = new MethodCache(name.lexeme());
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return get(instance(environment));
+		}
+
+		Object get(Instance instance) {
+			// fields shadow methods, so they are always checked first
+			int offset = fieldOffset(instance);
+			if (offset >= 0)
+				return instance.fields[offset];
+			return method(instance).bind(instance);
+		}
+
+		Instance instance(Environment environment) {
+			return instance(object.evaluate(environment));
+		}
+
+		// compiled code evaluates the object itself and keeps a Get without one for its caches
+		Instance instance(Object value) {
+			if (!(value instanceof Instance)) {
+				throw new RuntimeError(name, "Nur Instanzen haben Eigenschaften.");
+			}
+			return (Instance) value;
+		}
+
+		// offset of the field in the instance, -1 if it has none
+		int fieldOffset(Instance instance) {
+			Shape shape = instance.shape;
+			if (shape != cachedShape) {
+				cachedOffset = shape.offsetOf(name.lexeme());
+				cachedShape = shape;
+			}
+			return cachedOffset;
+		}
+
+		Function method(Instance instance) {
+			Function method = methods.lookup(instance.klass);
+			if (method == null) {
+				throw new RuntimeError(name, "Undefinierte Eigenschaft '" + name.lexeme() + "'.");
+			}
+			return method;
+		}
+	}
+
+	// obj.methode(...): calls the method with obj as "dies" instead of binding it first,
+	// so a call allocates nothing but the method's frame
+	static final class Invoke extends ExprNode {
+		final Interpreter interpreter;
+		final Get property;
+		final Token paren;
+		final ExprNode[] arguments;
+
+		Invoke(Interpreter interpreter, Get property, Token paren, ExprNode[] arguments) {
+			this.interpreter = interpreter;
+			this.property = property;
+			this.paren = paren;
+			this.arguments = arguments;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return invoke(environment, false);
+		}
+
+		@Override
+		Object evaluateTail(Environment environment) {
+			return invoke(environment, true);
+		}
+
+		private Object invoke(Environment environment, boolean tail) {
+			Instance instance = property.instance(environment);
+			int offset = property.fieldOffset(instance);
+			if (offset >= 0)
+				return Call.call(interpreter, instance.fields[offset], paren, arguments, environment, tail);
+
+			Function method = property.method(instance);
+			List<Object> values = Call.evaluateArguments(arguments, environment);
+			Call.checkArity(paren, method.arity(), values.size());
+			if (tail)
+				return method.tailCall(interpreter, instance, values);
+			try {
+				return method.invoke(interpreter, instance, values);
+			} catch (StackOverflowError error) {
+				throw Call.stackOverflow(paren);
+			}
+		}
+	}
+
+	static final class Set extends ExprNode {
+		final ExprNode object;
+		final Token name;
+		final ExprNode value;
+		// the last shape seen here: either the field's offset in it,
+		// or (for a field it lacks) the shape the instance moves to when the field is added
+		private Shape cachedShape = null;
+		private int cachedOffset;
+		private Shape cachedTransition;
+
+		Set(ExprNode object, Token name, ExprNode value) {
+			this.object = object;
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			Instance instance = instance(object.evaluate(environment));
+			return store(instance, value.evaluate(environment));
+		}
+
+		// the object is checked before the value is evaluated; compiled code, which evaluates
+		// both itself, keeps a Set without them for its caches
+		Instance instance(Object target) {
+			if (!(target instanceof Instance)) {
+				throw new RuntimeError(name, "Nur Instanzen haben Eigenschaften.");
+			}
+			return (Instance) target;
+		}
+
+		Object store(Instance instance, Object result) {
+			Shape shape = instance.shape;
+			if (shape != cachedShape) {
+				cachedOffset = shape.offsetOf(name.lexeme());
+				cachedTransition = cachedOffset < 0 ? shape.withField(name.lexeme()) : null;
+				cachedShape = shape;
+			}
+			if (cachedTransition != null) {
+				instance.addField(cachedTransition, result);
+			} else {
+				instance.fields[cachedOffset] = result;
+			}
+			return result;
+		}
+	}
+
+	// super.method: "super" sits in slot 0 of its frame, "dies" in slot 0 of the method's frame inside it
+	static final class Super extends ExprNode {
+		final int superDepth;
+		final int thisDepth;
+		final Token method;
+		// keyed by the superclass: a class declared in a function is a new class on every call
+		private final MethodCache methods;
+
+		Super(int superDepth, int thisDepth, Token method) {
+			this.superDepth = superDepth;
+			this.thisDepth = thisDepth;
+			this.method = method;
+			this.methods = new MethodCache(method.lexeme());
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			return method(environment).bind(receiver(environment));
+		}
+
+		Function method(Environment environment) {
+			Class superclass = (Class) environment.getAt(superDepth, 0);
+			Function function = methods.lookup(superclass);
+			if (function == null) {
+				throw new RuntimeError(method, "Undefinierte Eigenschaft '" + method.lexeme() + "'.");
+			}
+			return function;
+		}
+
+		Instance receiver(Environment environment) {
+			return (Instance) environment.getAt(thisDepth, 0);
+		}
+	}
+
+	// super.methode(...): like Invoke, the method runs on the current "dies" without being bound
+	static final class SuperInvoke extends ExprNode {
+		final Interpreter interpreter;
+		final Super property;
+		final Token paren;
+		final ExprNode[] arguments;
+
+		SuperInvoke(Interpreter interpreter, Super property, Token paren, ExprNode[] arguments) {
+			this.interpreter = interpreter;
+			this.property = property;
+			this.paren = paren;
+			this.arguments = arguments;
+		}
+
+		@Override
+		Object evaluate(Environment environment) {
+			Function method = property.method(environment);
+			List<Object> values = Call.evaluateArguments(arguments, environment);
+			Call.checkArity(paren, method.arity(), values.size());
+			try {
+				return method.invoke(interpreter, property.receiver(environment), values);
+			} catch (StackOverflowError error) {
+				throw Call.stackOverflow(paren);
+			}
+		}
+
+		@Override
+		Object evaluateTail(Environment environment) {
+			Function method = property.method(environment);
+			List<Object> values = Call.evaluateArguments(arguments, environment);
+			Call.checkArity(paren, method.arity(), values.size());
+			return method.tailCall(interpreter, property.receiver(environment), values);
+		}
+	}
+}
@@ -3,44 +3,119 @@ package LOX;
 import java.util.List;
 
 class Function implements Callable {
+	// calls after which a top-level function is handed to the JIT
+	private static final int JIT_THRESHOLD = 1000;
+	// what a body evaluates to when it ended in a tail call, left in the interpreter's tail registers
+	static final Object TAIL_CALL = new Object();
+
 	private final Stmt.Function declaration;
+	private final StmtNode body; // the linked statements of the body, run in the call's frame
+	private final int frameSize; // "dies" for a method, the parameters, the locals declared directly in the body
 	private final Environment closure;
+	private final boolean isMethod; // the frame starts with "dies" in slot 0
 	private final boolean isInitializer;
+	private final Instance receiver; // set only on a bound method, i.e. one used as a value
+	private int calls = 0;
+	private boolean jitTried = false;
+	private CompiledCode compiled; // the body as JVM bytecode, once the function is hot
 
 	// constructor
-	Function(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+	Function(Stmt.Function declaration, StmtNode body, int frameSize, Environment closure, boolean isMethod,
+			boolean isInitializer) {
+		this(declaration, body, frameSize, closure, isMethod, isInitializer, null);
+	}
+
+	private Function(Stmt.Function declaration, StmtNode body, int frameSize, Environment closure,
+			boolean isMethod, boolean isInitializer, Instance receiver) {
 		this.isInitializer = isInitializer;
 		this.closure = closure;
 		this.declaration = declaration;
+		this.body = body;
+		this.frameSize = frameSize;
+		this.isMethod = isMethod;
+		this.receiver = receiver;
 	}
 
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
-		Environment environment = new Environment(closure);
-		for (int i = 0; i < declaration.params.size(); i++) {
-			environment.define(declaration.params.get(i).lexeme, arguments.get(i));
-		}
+		return invoke(interpreter, receiver, arguments);
+	}
 
-		try {
-			interpreter.executeBlock(declaration.body, environment);
-		} catch (Return returnValue) {
-			if (isInitializer) {
-				return closure.getAt(0, "dies");
+	// calls the function; a method gets instance as "dies" directly, without being bound first.
+	// This is also the trampoline for tail calls: a body that ends in one reports TAIL_CALL, and
+	// the call it left in the interpreter is made by the next round of the loop, in this frame
+	Object invoke(Interpreter interpreter, Instance instance, List<Object> arguments) {
+		Function function = this;
+		while (true) {
+			if (function.compiled != null) {
+				Object result = function.compiled.call(interpreter, arguments);
+				if (result != TAIL_CALL)
+					return result;
+			} else {
+				if (!function.jitTried && ++function.calls >= JIT_THRESHOLD)
+					function.compile(interpreter);
+
+				Environment environment = new Environment(function.closure, function.frameSize);
+				if (function.isMethod) {
+					environment.define("dies", instance);
+				}
+				List<Token> params = function.declaration.params;
+				for (int i = 0; i < params.size(); i++) {
+					environment.define(params.get(i).lexeme(), arguments.get(i));
+				}
+
+				int status = function.body.execute(environment);
+				if (function.isInitializer) {
+					return environment.getLocal(0);
+				}
+				if (status == StmtNode.RETURN) {
+					return interpreter.returnValue;
+				}
+				if (status != StmtNode.TAIL_CALL) {
+					return null;
+				}
 			}
-			return returnValue.value;
-		}
 
-		if (isInitializer) {
-			return closure.getAt(0, "dies");
+			function = interpreter.tailFunction;
+			instance = interpreter.tailReceiver;
+			arguments = interpreter.tailArguments;
 		}
+	}
+
+	// makes the tail call a body directly called by JIT code left in the interpreter
+	static Object trampoline(Interpreter interpreter) {
+		return interpreter.tailFunction.invoke(interpreter, interpreter.tailReceiver, interpreter.tailArguments);
+	}
+
+	// the call as the last thing a body does: only recorded, invoke makes it
+	Object tailCall(Interpreter interpreter, List<Object> arguments) {
+		return tailCall(interpreter, receiver, arguments);
+	}
+
+	Object tailCall(Interpreter interpreter, Instance instance, List<Object> arguments) {
+		interpreter.tailFunction = this;
+		interpreter.tailReceiver = instance;
+		interpreter.tailArguments = arguments;
+		return TAIL_CALL;
+	}
+
+	// only top-level functions: everything they do not declare themselves is a global;
+	// if the JIT cannot compile the body, the function stays interpreted for good
+	private void compile(Interpreter interpreter) {
+		jitTried = true;
+		if (isMethod || closure != interpreter.globals)
+			return;
+		compiled = JitCompiler.compile(this, declaration);
+	}
 
-		return null;
+	// a method as its class holds it; never a Lox value, since getting a method binds it
+	boolean isUnbound() {
+		return isMethod && receiver == null;
 	}
 
+	// the method as a value (obj.methode without calling it): remembers its receiver
 	Function bind(Instance instance) {
-		Environment environment = new Environment(closure);
-		environment.define("dies", instance);
-		return new Function(declaration, environment, isInitializer);
+		return new Function(declaration, body, frameSize, closure, isMethod, isInitializer, instance);
 	}
 
 	@Override
@@ -50,6 +125,6 @@ class Function implements Callable {
 
 	@Override
 	public String toString() {
-		return "<fn " + declaration.name.lexeme + ">";
+		return "<fn " + declaration.name.lexeme() + ">";
 	}
-}
\ No newline at end of file
+}
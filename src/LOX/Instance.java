@@ -1,13 +1,15 @@
 package LOX;
-import java.util.HashMap;
-import java.util.Map;
 
 class Instance {
-	private Class klass;
-	private final Map<String, Object> fields = new HashMap<>();
+	final Class klass;
+	// names and offsets of the fields, shared with every instance that got the same fields
+	Shape shape = Shape.EMPTY;
+	// field values, indexed by the offsets of the shape
+	Object[] fields;
 
 	Instance(Class klass) {
 		this.klass = klass;
+		this.fields = new Object[klass.fieldCapacity];
 	}
 
 	@Override
@@ -15,19 +17,42 @@ class Instance {
 		return klass.name + " Instanz";
 	}
 
+	// uncached lookup; Get and Set nodes keep the offset for the shape they last saw
 	Object get(Token name) {
-		if (fields.containsKey(name.lexeme)) {
-			return fields.get(name.lexeme);
+		int offset = shape.offsetOf(name.lexeme());
+		if (offset >= 0) {
+			return fields[offset];
 		}
 
-		Function method = klass.findMethod(name.lexeme);
+		Function method = klass.findMethod(name.lexeme());
 		if (method != null)
 			return method.bind(this);
 
-		throw new RuntimeError(name, "Undefinierte Eigenschaft '" + name.lexeme + "'.");
+		throw new RuntimeError(name, "Undefinierte Eigenschaft '" + name.lexeme() + "'.");
 	}
 
-	void set(Token name, Object value) {
-		fields.put(name.lexeme, value);
+	void set(String name, Object value) {
+		int offset = shape.offsetOf(name);
+		if (offset < 0) {
+			addField(shape.withField(name), value);
+			return;
+		}
+		fields[offset] = value;
+	}
+
+	// moves the instance to next, a shape with one more field than its own, and stores that field
+	void addField(Shape next, Object value) {
+		int offset = shape.size();
+		if (offset == fields.length) {
+			// doubling, so an instance that gains fields one by one copies them O(n) times
+			Object[] grown = new Object[Math.max(4, offset * 2)];
+			System.arraycopy(fields, 0, grown, 0, offset);
+			fields = grown;
+		}
+		// later instances of the class start out with room for as many fields as this one has
+		if (klass.fieldCapacity <= offset)
+			klass.fieldCapacity = offset + 1;
+		fields[offset] = value;
+		shape = next;
 	}
-}
\ No newline at end of file
+}
@@ -1,286 +1,84 @@
 package LOX;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+// runs programs: links the resolved statements into executable nodes and executes them
+// against the global environment, which lives as long as the interpreter (e.g. across REPL lines)
+class Interpreter {
 	final Environment globals = new Environment();
-	private Environment environment = globals;
-	private final Map<Expr, Integer> locals = new HashMap<>();
+	private final Map<Expr, Slot> locals = new HashMap<>();
+	// the zurückgeben statements the Resolver found to return a call
+	private final Set<Stmt.Return> tailCalls = new HashSet<>();
+	// value of the last zurückgeben, read by the call as soon as its body reports StmtNode.RETURN
+	Object returnValue = null;
+	// the call a body ended with when it reports StmtNode.TAIL_CALL, made next by Function.invoke
+	Function tailFunction = null;
+	Instance tailReceiver = null;
+	List<Object> tailArguments = null;
 
-	// Konstruktor: definiert native "uhr" Funktion
-	Interpreter() {
-		globals.define("uhr", new Callable() {
-			public int arity() {
-				return 0;
-			}
-
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				return (double) System.currentTimeMillis() / 1000.0;
-			}
-
-			public String toString() {
-				return "<native fn>";
-			}
-		});
-	}
-
-	void resolve(Expr expr, int depth) {
-		locals.put(expr, depth);
-	}
-
-	void interpret(List<Stmt> statements) {
-		try {
-			for (Stmt statement : statements) {
-				execute(statement);
-			}
-		} catch (RuntimeError error) {
-			Lox.runtimeError(error);
-		}
-	}
-
-	private void execute(Stmt stmt) {
-		stmt.accept(this);
-	}
-
-	@Override
-	public Void visitBlockStmt(Stmt.Block stmt) {
-		executeBlock(stmt.statements, new Environment(environment));
-		return null;
-	}
-
-	void executeBlock(List<Stmt> statements, Environment environment) {
-		Environment previous = this.environment;
-		try {
-			this.environment = environment;
-			for (Stmt statement : statements) {
-				execute(statement);
-			}
-		} finally {
-			this.environment = previous;
-		}
-	}
-
-	@Override
-	public Object visitGetExpr(Expr.Get expr) {
-		Object object = evaluate(expr.object);
-		if (object instanceof Instance) {
-			return ((Instance) object).get(expr.name);
-		}
-		throw new RuntimeError(expr.name, "Nur Instanzen haben Eigenschaften.");
-	}
-
-	@Override
-	public Void visitClassStmt(Stmt.Class stmt) {
-		Object superclass = null;
-		if (stmt.superclass != null) {
-			superclass = evaluate(stmt.superclass);
-			if (!(superclass instanceof Class)) {
-				throw new RuntimeError(stmt.superclass.name, "Die Superklasse muss eine Klasse sein.");
-			}
-		}
-
-		environment.define(stmt.name.lexeme, null);
-
-		if (stmt.superclass != null) {
-			environment = new Environment(environment);
-			environment.define("super", superclass);
-		}
-
-		Map<String, Function> methods = new HashMap<>();
-		for (Stmt.Function method : stmt.methods) {
-			Function function = new Function(method, environment, method.name.lexeme.equals("init"));
-			methods.put(method.name.lexeme, function);
-		}
-
-		Class klass = new Class(stmt.name.lexeme, (Class) superclass, methods);
-
-		if (superclass != null) {
-			environment = environment.enclosing;
-		}
-
-		environment.assign(stmt.name, klass);
-		return null;
-	}
+	// where the Resolver found a local variable: how many environments up, and which slot in that frame
+	static final class Slot {
+		final int depth;
+		final int index;
 
-	@Override
-	public Object visitSuperExpr(Expr.Super expr) {
-		int distance = locals.get(expr);
-		Class superclass = (Class) environment.getAt(distance, "super");
-		Instance object = (Instance) environment.getAt(distance - 1, "this");
-		Function method = superclass.findMethod(expr.method.lexeme);
-		if (method == null) {
-			throw new RuntimeError(expr.method, "Undefinierte Eigenschaft '" + expr.method.lexeme + "'.");
+		Slot(int depth, int index) {
+			this.depth = depth;
+			this.index = index;
 		}
-		return method.bind(object);
 	}
 
-	@Override
-	public Void visitFunctionStmt(Stmt.Function stmt) {
-		Function function = new Function(stmt, environment, false);
-		environment.define(stmt.name.lexeme, function);
-		return null;
-	}
-
-	@Override
-	public Void visitReturnStmt(Stmt.Return stmt) {
-		Object value = null;
-		if (stmt.value != null)
-			value = evaluate(stmt.value);
-
-		throw new Return(value);
-	}
-
-	@Override
-	public Object visitCallExpr(Expr.Call expr) {
-		Object callee = evaluate(expr.callee);
-		if (!(callee instanceof Callable)) {
-			throw new RuntimeError(expr.paren, "Kann nur Funktionen und Klassen aufrufen.");
-		}
-
-		List<Object> arguments = new ArrayList<>();
-		for (Expr argument : expr.arguments) {
-			arguments.add(evaluate(argument));
-		}
-
-		Callable function = (Callable) callee;
-		if (arguments.size() != function.arity()) {
-			throw new RuntimeError(expr.paren,
-					"Erwartet " + function.arity() + " Argumente, aber erhalten " + arguments.size() + ".");
-		}
-
-		return function.call(this, arguments);
-	}
-
-	@Override
-	public Void visitWhileStmt(Stmt.While stmt) {
-		while (isTruthy(evaluate(stmt.condition))) {
-			execute(stmt.body);
-		}
-		return null;
-	}
-
-	@Override
-	public Object visitLogicalExpr(Expr.Logical expr) {
-		Object left = evaluate(expr.left);
-		if (expr.operator.type == TokenType.OR) {
-			if (isTruthy(left))
-				return left;
-		} else { // AND
-			if (!isTruthy(left))
-				return left;
-		}
-		return evaluate(expr.right);
-	}
-
-	@Override
-	public Object visitSetExpr(Expr.Set expr) {
-		Object object = evaluate(expr.object);
-		if (!(object instanceof Instance)) {
-			throw new RuntimeError(expr.name, "Nur Instanzen haben Eigenschaften.");
-		}
-		Object value = evaluate(expr.value);
-		((Instance) object).set(expr.name, value);
-		return value;
-	}
-
-	@Override
-	public Object visitThisExpr(Expr.This expr) {
-		return lookUpVariable(expr.keyword, expr);
-	}
-
-	@Override
-	public Void visitIfStmt(Stmt.If stmt) {
-		if (isTruthy(evaluate(stmt.condition))) {
-			execute(stmt.thenBranch);
-		} else if (stmt.elseBranch != null) {
-			execute(stmt.elseBranch);
-		}
-		return null;
-	}
-
-	@Override
-	public Object visitVariableExpr(Expr.Variable expr) {
-		return lookUpVariable(expr.name, expr);
-	}
-
-	private Object lookUpVariable(Token name, Expr expr) {
-		Integer distance = locals.get(expr);
-		if (distance != null) {
-			return environment.getAt(distance, name.lexeme);
-		} else {
-			return globals.get(name);
-		}
-	}
-
-	@Override
-	public Void visitVarStmt(Stmt.Var stmt) {
-		Object value = null;
-		if (stmt.initializer != null) {
-			value = evaluate(stmt.initializer);
-		}
-		environment.define(stmt.name.lexeme, value);
-		return null;
-	}
-
-	@Override
-	public Object visitAssignExpr(Expr.Assign expr) {
-		Object value = evaluate(expr.value);
-		Integer distance = locals.get(expr);
-		if (distance != null) {
-			environment.assignAt(distance, expr.name, value);
-		} else {
-			globals.assign(expr.name, value);
-		}
-		return value;
+	// Konstruktor: definiert die nativen Funktionen ("uhr", ...)
+	Interpreter() {
+		NativeRegistry.standard().forEach(globals::define);
 	}
 
-	@Override
-	public Void visitExpressionStmt(Stmt.Expression stmt) {
-		evaluate(stmt.expression);
-		return null;
+	void resolve(Expr expr, int depth, int slot) {
+		locals.put(expr, new Slot(depth, slot));
 	}
 
-	@Override
-	public Void visitPrintStmt(Stmt.Print stmt) {
-		Object value = evaluate(stmt.expression);
-		System.out.println(stringify(value));
-		return null;
+	// where a local lives; only needed while the NodeCompiler links the program
+	Slot slotOf(Expr expr) {
+		return locals.get(expr);
 	}
 
-	public Object visitLiteralExpr(Expr.Literal expr) {
-		return expr.value;
+	void tailCall(Stmt.Return stmt) {
+		tailCalls.add(stmt);
 	}
 
-	public Object visitGroupingExpr(Expr.Grouping expr) {
-		return evaluate(expr.expression);
+	boolean isTailCall(Stmt.Return stmt) {
+		return tailCalls.contains(stmt);
 	}
 
-	private Object evaluate(Expr expr) {
-		return expr.accept(this);
+	// drops what the Resolver recorded, once it has been used or will not be
+	void forgetResolved() {
+		locals.clear();
+		tailCalls.clear();
 	}
 
-	public Object visitUnaryExpr(Expr.Unary expr) {
-		Object right = evaluate(expr.right);
-		switch (expr.operator.type) {
-		case BANG:
-			return !isTruthy(right);
-		case MINUS:
-			checkNumberOperand(expr.operator, right);
-			return -(double) right;
+	void interpret(List<Stmt> statements) {
+		StmtNode[] program = new NodeCompiler(this).compile(statements);
+		// every variable is linked to its slot now, so the side tables can be dropped
+		forgetResolved();
+		try {
+			for (StmtNode statement : program) {
+				statement.execute(globals);
+			}
+		} catch (RuntimeError error) {
+			Lox.runtimeError(error);
 		}
-		return null;
 	}
 
-	private void checkNumberOperand(Token operator, Object operand) {
+	static void checkNumberOperand(Token operator, Object operand) {
 		if (operand instanceof Double)
 			return;
 		throw new RuntimeError(operator, "Operand muss eine Zahl sein.");
 	}
 
-	private boolean isTruthy(Object object) {
+	static boolean isTruthy(Object object) {
 		if (object == null)
 			return false;
 		if (object instanceof Boolean)
@@ -288,75 +86,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return true;
 	}
 
-	@Override
-	public Object visitBinaryExpr(Expr.Binary expr) {
-		Object left = evaluate(expr.left);
-		Object right = evaluate(expr.right);
-
-		switch (expr.operator.type) {
-		case GREATER:
-			checkNumberOperands(expr.operator, left, right);
-			return (double) left > (double) right;
-		case GREATER_EQUAL:
-			checkNumberOperands(expr.operator, left, right);
-			return (double) left >= (double) right;
-		case LESS:
-			checkNumberOperands(expr.operator, left, right);
-			return (double) left < (double) right;
-		case LESS_EQUAL:
-			checkNumberOperands(expr.operator, left, right);
-			return (double) left <= (double) right;
-		case BANG_EQUAL:
-			return !isEqual(left, right);
-		case EQUAL_EQUAL:
-			return isEqual(left, right);
-		case MINUS:
-			checkNumberOperands(expr.operator, left, right);
-			return (double) left - (double) right;
-		case PLUS:
-			if (left instanceof Double && right instanceof Double)
-				return (double) left + (double) right;
-			if (left instanceof String && right instanceof String)
-				return (String) left + (String) right;
-			throw new RuntimeError(expr.operator, "Operanden müssen zwei Zahlen oder zwei Zeichenketten sein.");
-		case SLASH:
-			checkNumberOperands(expr.operator, left, right);
-			return (double) left / (double) right;
-		case STAR:
-			checkNumberOperands(expr.operator, left, right);
-			return (double) left * (double) right;
-		}
-		return null;
-	}
-
-	private void checkNumberOperands(Token operator, Object left, Object right) {
+	static void checkNumberOperands(Token operator, Object left, Object right) {
 		if (left instanceof Double && right instanceof Double)
 			return;
 		throw new RuntimeError(operator, "Operanden müssen Zahlen sein.");
 	}
 
-	private boolean isEqual(Object a, Object b) {
+	static boolean isEqual(Object a, Object b) {
 		if (a == null && b == null)
 			return true;
 		if (a == null)
 			return false;
+		if (b instanceof Rope)
+			return b.equals(a); // String.equals does not know ropes
 		return a.equals(b);
 	}
-
-	private String stringify(Object object) {
-		if (object == null)
-			return "nichts"; // nil → nichts
-
-		if (object instanceof Boolean) {
-			return (Boolean) object ? "wahr" : "falsch";
-		}
-
-		if (object instanceof Double) {
-			String text = object.toString();
-			if (text.endsWith(".0"))
-				text = text.substring(0, text.length() - 2);
-			return text;
-		}
-		return object.toString();
-	}
 }
\ No newline at end of file
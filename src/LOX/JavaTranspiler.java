@@ -0,0 +1,792 @@
+package LOX;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/*
+ * Translates a resolved program into the Java source of a single class, for TOOL.CompileLox.
+ * Every Lox value is an Object and every operation a call into TOOL.LoxRuntime, which reports
+ * errors exactly like the interpreter. Globals become static fields and locals Java locals;
+ * a local that a nested function captures and that changes later lives in a one-element array,
+ * because lambdas only capture effectively final variables. Top-level functions become static
+ * methods, which calls by their global name reach directly while the global still holds them.
+ * The top-level code is cut into parts and the number constants into groups, each a nested
+ * class, so a long script stays within what one Java method and one class file may hold.
+ */
+class JavaTranspiler implements Expr.Visitor<String>, Stmt.Visitor<Void> {
+	private static final String RUNTIME = "LoxRuntime";
+	// about how much source one part of the top-level code gets: a Java method holds at most
+	// 64 KB of bytecode, and the statements of a generated script easily come to more
+	private static final int PART_LENGTH = 16_000;
+	// number constants per holder class; a class has at most 65535 constants of its own
+	private static final int CONSTANTS_PER_CLASS = 1024;
+
+	// a local variable or parameter, as the analysis found it
+	private static final class Variable {
+		final String javaName;
+		final Stmt.Function function; // the function it is declared in, null in the top-level code
+		boolean captured = false; // used by a function nested in that one
+		boolean changes = false; // assigned after its declaration (functions and classes always are)
+
+		Variable(String javaName, Stmt.Function function) {
+			this.javaName = javaName;
+			this.function = function;
+		}
+
+		// lives in a one-element array
+		boolean boxed() {
+			return captured && changes;
+		}
+	}
+
+	// one Java method or lambda body being written
+	private static final class Context {
+		final StringBuilder out = new StringBuilder();
+		final List<String> temps = new ArrayList<>(); // for und / oder
+		final String self; // the receiver of the enclosing method, null outside methods
+		final String klass; // the class whose method this is, for super
+		final boolean isInitializer;
+		int indent;
+
+		Context(String self, String klass, boolean isInitializer, int indent) {
+			this.self = self;
+			this.klass = klass;
+			this.isInitializer = isInitializer;
+			this.indent = indent;
+		}
+	}
+
+	private final String className;
+	// keyed by the Expr.Variable or Expr.Assign using them, the Stmt declaring them, or a parameter's Token
+	private final Map<Object, Variable> variables = new IdentityHashMap<>();
+	private final Set<String> globals = new LinkedHashSet<>();
+	// Java names of the static methods of the top-level functions
+	private final Map<Stmt.Function, String> topLevel = new LinkedHashMap<>();
+	// global names declared by exactly one top-level function: their calls may go to it directly
+	private final Map<String, Stmt.Function> direct = new HashMap<>();
+	private final Map<Long, String> constants = new LinkedHashMap<>();
+	private final StringBuilder methods = new StringBuilder();
+	private Context context;
+	private int next = 0;
+
+	JavaTranspiler(String className) {
+		this.className = className;
+	}
+
+	String transpile(List<Stmt> statements) {
+		new Analysis().resolve(statements);
+
+		Map<String, Integer> declared = new HashMap<>();
+		for (Stmt statement : statements) {
+			if (statement instanceof Stmt.Function) {
+				Stmt.Function function = (Stmt.Function) statement;
+				String name = function.name.lexeme();
+				int count = declared.merge(name, 1, Integer::sum);
+				// $ cannot be part of a Lox name, so the second a (fn_a$2) is not the function a_2
+				topLevel.put(function, "fn_" + name + (count > 1 ? "$" + count : ""));
+				direct.put(name, count > 1 ? null : function);
+			}
+		}
+
+		// the top-level code keeps no Java local from one statement to the next, so it can be
+		// cut between any two statements; each part is a class of its own, so its constants do
+		// not add up with the others' either
+		List<String> parts = new ArrayList<>();
+		context = new Context(null, null, false, 3);
+		for (Stmt statement : statements) {
+			statement.accept(this);
+			if (context.out.length() >= PART_LENGTH) {
+				parts.add(body(context));
+				context = new Context(null, null, false, 3);
+			}
+		}
+		parts.add(body(context));
+
+		StringBuilder source = new StringBuilder();
+		source.append("// compiled from German Lox by TOOL.CompileLox\n\n");
+		source.append("import TOOL.LoxRuntime;\n\n");
+		source.append("public final class ").append(className).append(" {\n");
+		for (String global : globals) {
+			String initial = RUNTIME + ".builtin(" + quote(global) + ")";
+			source.append("\tprivate static Object g_").append(global).append(" = ").append(initial).append(";\n");
+		}
+		for (Map.Entry<Stmt.Function, String> function : topLevel.entrySet()) {
+			source.append(functionConstant(function.getKey(), function.getValue()));
+		}
+		source.append("\n\tpublic static void main(String[] args) {\n");
+		source.append("\t\t").append(RUNTIME).append(".run(").append(className).append("::program);\n");
+		source.append("\t}\n\n");
+		source.append("\tprivate static void program() {\n");
+		for (int i = 0; i < parts.size(); i++) {
+			source.append("\t\tPart").append(i).append(".run();\n");
+		}
+		source.append("\t}\n");
+		for (int i = 0; i < parts.size(); i++) {
+			source.append("\n\tprivate static final class Part").append(i).append(" {\n");
+			source.append("\t\tstatic void run() {\n").append(parts.get(i)).append("\t\t}\n\t}\n");
+		}
+		int count = 0;
+		for (Map.Entry<Long, String> constant : constants.entrySet()) {
+			if (count % CONSTANTS_PER_CLASS == 0) {
+				source.append(count == 0 ? "\n" : "\t}\n\n");
+				source.append("\tprivate static final class Const").append(count / CONSTANTS_PER_CLASS).append(" {\n");
+			}
+			String name = constant.getValue();
+			source.append("\t\tstatic final Object ").append(name.substring(name.indexOf('.') + 1)).append(" = ")
+					.append(Double.toString(Double.longBitsToDouble(constant.getKey()))).append(";\n");
+			count++;
+		}
+		if (count > 0)
+			source.append("\t}\n");
+		source.append(methods);
+		source.append("}\n");
+		return source.toString();
+	}
+
+	// Analysis: the same scopes as the Resolver, to find each variable's declaration
+	// and which variables nested functions capture
+
+	private final class Analysis implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+		private final Stack<Map<String, Variable>> scopes = new Stack<>();
+		private Stmt.Function currentFunction = null;
+
+		void resolve(List<Stmt> statements) {
+			for (Stmt statement : statements) {
+				statement.accept(this);
+			}
+		}
+
+		private void resolve(Expr expr) {
+			expr.accept(this);
+		}
+
+		// a global when declared outside every scope, otherwise a new local
+		private Variable declare(Object declaration, Token name) {
+			if (scopes.isEmpty()) {
+				globals.add(name.lexeme());
+				return null;
+			}
+			Variable variable = new Variable("v_" + name.lexeme() + "_" + next++, currentFunction);
+			scopes.peek().put(name.lexeme(), variable);
+			variables.put(declaration, variable);
+			return variable;
+		}
+
+		private Variable lookup(Expr expr, Token name) {
+			for (int i = scopes.size() - 1; i >= 0; i--) {
+				Variable variable = scopes.get(i).get(name.lexeme());
+				if (variable != null) {
+					if (variable.function != currentFunction)
+						variable.captured = true;
+					variables.put(expr, variable);
+					return variable;
+				}
+			}
+			globals.add(name.lexeme());
+			return null;
+		}
+
+		private void function(Stmt.Function function) {
+			Stmt.Function enclosingFunction = currentFunction;
+			currentFunction = function;
+			scopes.push(new HashMap<>());
+			for (Token param : function.params) {
+				declare(param, param);
+			}
+			resolve(function.body);
+			scopes.pop();
+			currentFunction = enclosingFunction;
+		}
+
+		@Override
+		public Void visitBlockStmt(Stmt.Block stmt) {
+			scopes.push(new HashMap<>());
+			resolve(stmt.statements);
+			scopes.pop();
+			return null;
+		}
+
+		@Override
+		public Void visitClassStmt(Stmt.Class stmt) {
+			Variable variable = declare(stmt, stmt.name);
+			if (variable != null)
+				variable.changes = true;
+			if (stmt.superclass != null)
+				resolve(stmt.superclass);
+			for (Stmt.Function method : stmt.methods) {
+				function(method);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStmt(Stmt.Expression stmt) {
+			resolve(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionStmt(Stmt.Function stmt) {
+			Variable variable = declare(stmt, stmt.name);
+			if (variable != null)
+				variable.changes = true;
+			function(stmt);
+			return null;
+		}
+
+		@Override
+		public Void visitIfStmt(Stmt.If stmt) {
+			resolve(stmt.condition);
+			stmt.thenBranch.accept(this);
+			if (stmt.elseBranch != null)
+				stmt.elseBranch.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitPrintStmt(Stmt.Print stmt) {
+			resolve(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitReturnStmt(Stmt.Return stmt) {
+			if (stmt.value != null)
+				resolve(stmt.value);
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Stmt.Var stmt) {
+			// the Resolver rejects a local read in its own initializer, so it can be declared after
+			if (stmt.initializer != null)
+				resolve(stmt.initializer);
+			declare(stmt, stmt.name);
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStmt(Stmt.While stmt) {
+			resolve(stmt.condition);
+			stmt.body.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitAssignExpr(Expr.Assign expr) {
+			resolve(expr.value);
+			Variable variable = lookup(expr, expr.name);
+			if (variable != null)
+				variable.changes = true;
+			return null;
+		}
+
+		@Override
+		public Void visitBinaryExpr(Expr.Binary expr) {
+			resolve(expr.left);
+			resolve(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitCallExpr(Expr.Call expr) {
+			resolve(expr.callee);
+			for (Expr argument : expr.arguments) {
+				resolve(argument);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitGetExpr(Expr.Get expr) {
+			resolve(expr.object);
+			return null;
+		}
+
+		@Override
+		public Void visitGroupingExpr(Expr.Grouping expr) {
+			resolve(expr.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitLiteralExpr(Expr.Literal expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+			for (Expr element : expr.elements) {
+				resolve(element);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitLogicalExpr(Expr.Logical expr) {
+			resolve(expr.left);
+			resolve(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitSetExpr(Expr.Set expr) {
+			resolve(expr.value);
+			resolve(expr.object);
+			return null;
+		}
+
+		@Override
+		public Void visitSuperExpr(Expr.Super expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitThisExpr(Expr.This expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryExpr(Expr.Unary expr) {
+			resolve(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpr(Expr.Variable expr) {
+			lookup(expr, expr.name);
+			return null;
+		}
+	}
+
+	// Writing source
+
+	private void line(String text) {
+		for (int i = 0; i < context.indent; i++) {
+			context.out.append('\t');
+		}
+		context.out.append(text).append('\n');
+	}
+
+	// the finished statements of a context, after the temporaries they use
+	private static String body(Context context) {
+		StringBuilder body = new StringBuilder();
+		if (!context.temps.isEmpty()) {
+			body.append("\t".repeat(context.indent)).append("Object ").append(String.join(", ", context.temps))
+					.append(";\n");
+		}
+		return body.append(context.out).toString();
+	}
+
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < ' ') {
+				// octal, not \\u: unicode escapes are replaced before Java even reads the string
+				quoted.append(String.format("\\%03o", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	// ends the line that opens a function's Java body: javac's "code too large" names no Lox
+	// function, so CompileLox finds the function it means by these
+	private static String marker(Stmt.Function function) {
+		return " // funktion " + function.name.lexeme() + ", Zeile " + function.name.line;
+	}
+
+	private String reference(Variable variable) {
+		return variable.boxed() ? variable.javaName + "[0]" : variable.javaName;
+	}
+
+	// declares a local with its first value
+	private void define(Variable variable, String value) {
+		if (variable.boxed()) {
+			line("final Object[] " + variable.javaName + " = { " + value + " };");
+		} else {
+			line("Object " + variable.javaName + " = " + value + ";");
+		}
+	}
+
+	private String temp() {
+		String name = "t_" + next++;
+		context.temps.add(name);
+		return name;
+	}
+
+	// the statements of a function body in a new context; parameters are taken from values
+	private String functionBody(Stmt.Function function, Context body, String[] values) {
+		Context enclosing = context;
+		context = body;
+		for (int i = 0; i < values.length; i++) {
+			define(variables.get(function.params.get(i)), values[i]);
+		}
+		for (Stmt statement : function.body) {
+			statement.accept(this);
+		}
+		line(context.isInitializer ? "return " + context.self + ";" : "return null;");
+		context = enclosing;
+		return body(body);
+	}
+
+	private String functionConstant(Stmt.Function function, String methodName) {
+		int arity = function.params.size();
+		String[] arguments = new String[arity];
+		String[] parameters = new String[arity];
+		for (int i = 0; i < arity; i++) {
+			arguments[i] = "a[" + i + "]";
+			parameters[i] = "Object p" + i;
+		}
+		String constant = "F" + methodName;
+		StringBuilder source = new StringBuilder();
+		source.append("\tprivate static final ").append(RUNTIME).append(".Function ").append(constant)
+				.append(" = new ").append(RUNTIME).append(".Function(").append(quote(function.name.lexeme()))
+				.append(", ").append(arity).append(", a -> ").append(methodName).append("(")
+				.append(String.join(", ", arguments)).append("));\n");
+
+		if (direct.get(function.name.lexeme()) == function) {
+			// a call by the global name: straight to the static method while the global holds it
+			String[] names = new String[arity];
+			for (int i = 0; i < arity; i++) {
+				names[i] = "p" + i;
+			}
+			String passed = String.join(", ", names);
+			source.append("\tprivate static Object call_").append(function.name.lexeme()).append("(").append(RUNTIME)
+					.append(".Callable callee, int line").append(arity > 0 ? ", " : "")
+					.append(String.join(", ", parameters)).append(") {\n");
+			// the direct call bypasses the runtime's call, so it turns a stack overflow into an error itself
+			source.append("\t\tif (callee != ").append(constant).append(")\n");
+			source.append("\t\t\treturn ").append(RUNTIME).append(".call(callee, line")
+					.append(arity > 0 ? ", " : "").append(passed).append(");\n");
+			source.append("\t\ttry {\n");
+			source.append("\t\t\treturn ").append(methodName).append("(").append(passed).append(");\n");
+			source.append("\t\t} catch (StackOverflowError error) {\n");
+			source.append("\t\t\tthrow ").append(RUNTIME).append(".stackOverflow(line);\n");
+			source.append("\t\t}\n");
+			source.append("\t}\n");
+		}
+		return source.toString();
+	}
+
+	// Statements
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		line("{");
+		context.indent++;
+		for (Stmt statement : stmt.statements) {
+			statement.accept(this);
+		}
+		context.indent--;
+		line("}");
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		Variable variable = variables.get(stmt);
+		if (variable != null && variable.boxed())
+			line("final Object[] " + variable.javaName + " = new Object[1];");
+
+		String klass = "k_" + next++;
+		String superclass = "null";
+		if (stmt.superclass != null) {
+			superclass = RUNTIME + ".superclass(" + stmt.superclass.accept(this) + ", " + stmt.superclass.name.line
+					+ ")";
+		}
+		line("final " + RUNTIME + ".LoxClass " + klass + " = new " + RUNTIME + ".LoxClass("
+				+ quote(stmt.name.lexeme()) + ", " + superclass + ");");
+
+		for (Stmt.Function method : stmt.methods) {
+			String self = "self_" + next++;
+			String arguments = "a_" + next++;
+			boolean isInitializer = method.name.lexeme().equals("init");
+			String[] values = new String[method.params.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = arguments + "[" + i + "]";
+			}
+			String body = functionBody(method, new Context(self, klass, isInitializer, context.indent + 1), values);
+			line(klass + ".method(" + quote(method.name.lexeme()) + ", " + values.length + ", (" + self + ", "
+					+ arguments + ") -> {" + marker(method));
+			context.out.append(body);
+			line("});");
+		}
+
+		if (variable == null) {
+			line("g_" + stmt.name.lexeme() + " = " + klass + ";");
+		} else if (variable.boxed()) {
+			line(variable.javaName + "[0] = " + klass + ";");
+		} else {
+			line("Object " + variable.javaName + " = " + klass + ";");
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		String expression = stmt.expression.accept(this);
+		if (stmt.expression instanceof Expr.Assign) {
+			// a parenthesized assignment is not a statement in Java
+			line(expression.substring(1, expression.length() - 1) + ";");
+		} else if (stmt.expression instanceof Expr.Call) {
+			line(expression + ";");
+		} else {
+			line(RUNTIME + ".discard(" + expression + ");");
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		String methodName = topLevel.get(stmt);
+		if (methodName != null) {
+			String[] parameters = new String[stmt.params.size()];
+			String[] values = new String[parameters.length];
+			for (int i = 0; i < parameters.length; i++) {
+				values[i] = "p" + i;
+				parameters[i] = "Object p" + i;
+			}
+			String body = functionBody(stmt, new Context(null, null, false, 2), values);
+			methods.append("\n\tprivate static Object ").append(methodName).append("(")
+					.append(String.join(", ", parameters)).append(") {").append(marker(stmt)).append("\n")
+					.append(body).append("\t}\n");
+			line("g_" + stmt.name.lexeme() + " = F" + methodName + ";");
+			return null;
+		}
+
+		// a nested function is a lambda; it keeps the receiver of an enclosing method
+		Variable variable = variables.get(stmt);
+		String arguments = "a_" + next++;
+		String[] values = new String[stmt.params.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = arguments + "[" + i + "]";
+		}
+		String body = functionBody(stmt, new Context(context.self, context.klass, false, context.indent + 1),
+				values);
+		String function = "new " + RUNTIME + ".Function(" + quote(stmt.name.lexeme()) + ", " + values.length + ", "
+				+ arguments + " -> {" + marker(stmt);
+		if (variable.boxed()) {
+			line("final Object[] " + variable.javaName + " = new Object[1];");
+			line(variable.javaName + "[0] = " + function);
+		} else {
+			line("Object " + variable.javaName + " = " + function);
+		}
+		context.out.append(body);
+		line("});");
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		line("if (" + RUNTIME + ".isTruthy(" + stmt.condition.accept(this) + ")) {");
+		context.indent++;
+		stmt.thenBranch.accept(this);
+		context.indent--;
+		if (stmt.elseBranch != null) {
+			line("} else {");
+			context.indent++;
+			stmt.elseBranch.accept(this);
+			context.indent--;
+		}
+		line("}");
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		line(RUNTIME + ".print(" + stmt.expression.accept(this) + ");");
+		return null;
+	}
+
+	// "if (true)" keeps javac from rejecting the statements after it as unreachable
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		String value = "null";
+		if (context.isInitializer) {
+			value = context.self;
+		} else if (stmt.value != null) {
+			value = stmt.value.accept(this);
+		}
+		line("if (true) return " + value + ";");
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		String value = stmt.initializer == null ? "null" : stmt.initializer.accept(this);
+		Variable variable = variables.get(stmt);
+		if (variable == null) {
+			line("g_" + stmt.name.lexeme() + " = " + value + ";");
+		} else {
+			define(variable, value);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		line("while (" + RUNTIME + ".isTruthy(" + stmt.condition.accept(this) + ")) {");
+		context.indent++;
+		stmt.body.accept(this);
+		context.indent--;
+		line("}");
+		return null;
+	}
+
+	// Expressions
+
+	@Override
+	public String visitAssignExpr(Expr.Assign expr) {
+		String value = expr.value.accept(this);
+		Variable variable = variables.get(expr);
+		if (variable == null) {
+			String global = "g_" + expr.name.lexeme();
+			return "(" + global + " = " + RUNTIME + ".assignGlobal(" + value + ", " + global + ", "
+					+ quote(expr.name.lexeme()) + ", " + expr.name.line + "))";
+		}
+		return "(" + reference(variable) + " = " + value + ")";
+	}
+
+	@Override
+	public String visitBinaryExpr(Expr.Binary expr) {
+		String left = expr.left.accept(this);
+		String right = expr.right.accept(this);
+		String line = ", " + expr.operator.line + ")";
+
+		switch (expr.operator.type) {
+		case GREATER:
+			return RUNTIME + ".greater(" + left + ", " + right + line;
+		case GREATER_EQUAL:
+			return RUNTIME + ".greaterEqual(" + left + ", " + right + line;
+		case LESS:
+			return RUNTIME + ".less(" + left + ", " + right + line;
+		case LESS_EQUAL:
+			return RUNTIME + ".lessEqual(" + left + ", " + right + line;
+		case BANG_EQUAL:
+			return RUNTIME + ".notEqual(" + left + ", " + right + ")";
+		case EQUAL_EQUAL:
+			return RUNTIME + ".equal(" + left + ", " + right + ")";
+		case MINUS:
+			return RUNTIME + ".subtract(" + left + ", " + right + line;
+		case PLUS:
+			return RUNTIME + ".add(" + left + ", " + right + line;
+		case SLASH:
+			return RUNTIME + ".divide(" + left + ", " + right + line;
+		case STAR:
+			return RUNTIME + ".multiply(" + left + ", " + right + line;
+		}
+		throw new IllegalStateException("Unbekannter Operator " + expr.operator.type);
+	}
+
+	@Override
+	public String visitCallExpr(Expr.Call expr) {
+		int line = expr.paren.line;
+		String callee = RUNTIME + ".callable(" + expr.callee.accept(this) + ", " + line + ")";
+		StringBuilder arguments = new StringBuilder();
+		for (Expr argument : expr.arguments) {
+			arguments.append(", ").append(argument.accept(this));
+		}
+
+		if (expr.callee instanceof Expr.Variable && !variables.containsKey(expr.callee)) {
+			Stmt.Function function = direct.get(((Expr.Variable) expr.callee).name.lexeme());
+			if (function != null && function.params.size() == expr.arguments.size())
+				return "call_" + function.name.lexeme() + "(" + callee + ", " + line + arguments + ")";
+		}
+		return RUNTIME + ".call(" + callee + ", " + line + arguments + ")";
+	}
+
+	@Override
+	public String visitGetExpr(Expr.Get expr) {
+		return RUNTIME + ".get(" + expr.object.accept(this) + ", " + quote(expr.name.lexeme()) + ", " + expr.name.line
+				+ ")";
+	}
+
+	@Override
+	public String visitGroupingExpr(Expr.Grouping expr) {
+		return expr.expression.accept(this);
+	}
+
+	@Override
+	public String visitLiteralExpr(Expr.Literal expr) {
+		Object value = expr.value;
+		if (value instanceof Double) {
+			// one box per distinct number, shared by every use
+			return constants.computeIfAbsent(Double.doubleToLongBits((double) value),
+					bits -> "Const" + constants.size() / CONSTANTS_PER_CLASS + ".C_" + next++);
+		}
+		if (value instanceof String)
+			return quote((String) value);
+		if (value instanceof Boolean)
+			return (boolean) value ? "Boolean.TRUE" : "Boolean.FALSE";
+		return "(Object) null"; // typed, so a lone nichts argument is not taken for the varargs array
+	}
+
+	@Override
+	public String visitListLiteralExpr(Expr.ListLiteral expr) {
+		StringBuilder elements = new StringBuilder();
+		for (Expr element : expr.elements) {
+			if (elements.length() > 0)
+				elements.append(", ");
+			elements.append(element.accept(this));
+		}
+		return RUNTIME + ".list(" + elements + ")";
+	}
+
+	// the result is one of the operands, so the left one is kept in a temporary
+	@Override
+	public String visitLogicalExpr(Expr.Logical expr) {
+		String left = expr.left.accept(this);
+		String right = expr.right.accept(this);
+		String temp = temp();
+		String test = "(" + RUNTIME + ".isTruthy(" + temp + " = " + left + ") ? ";
+		if (expr.operator.type == TokenType.OR)
+			return test + temp + " : " + right + ")";
+		return test + right + " : " + temp + ")";
+	}
+
+	@Override
+	public String visitSetExpr(Expr.Set expr) {
+		String object = RUNTIME + ".instance(" + expr.object.accept(this) + ", " + expr.name.line + ")";
+		return RUNTIME + ".set(" + object + ", " + quote(expr.name.lexeme()) + ", " + expr.value.accept(this) + ")";
+	}
+
+	@Override
+	public String visitSuperExpr(Expr.Super expr) {
+		return RUNTIME + ".superMethod(" + context.klass + ", " + context.self + ", " + quote(expr.method.lexeme())
+				+ ", " + expr.method.line + ")";
+	}
+
+	@Override
+	public String visitThisExpr(Expr.This expr) {
+		return context.self;
+	}
+
+	@Override
+	public String visitUnaryExpr(Expr.Unary expr) {
+		String right = expr.right.accept(this);
+		if (expr.operator.type == TokenType.MINUS)
+			return RUNTIME + ".negate(" + right + ", " + expr.operator.line + ")";
+		return RUNTIME + ".not(" + right + ")";
+	}
+
+	@Override
+	public String visitVariableExpr(Expr.Variable expr) {
+		Variable variable = variables.get(expr);
+		if (variable == null) {
+			return RUNTIME + ".global(g_" + expr.name.lexeme() + ", " + quote(expr.name.lexeme()) + ", "
+					+ expr.name.line + ")";
+		}
+		return reference(variable);
+	}
+}
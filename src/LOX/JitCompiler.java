@@ -0,0 +1,996 @@
+package LOX;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import LOX.ClassFile.Code;
+
+/*
+ * Second tier for hot functions: compiles the body of a top-level function into a static
+ * method of a hidden class, so HotSpot can inline and optimize it like any Java method.
+ *
+ * Only top-level functions are compiled: every name that is not one of their own locals is a
+ * global, so locals live in JVM local variables and no Environment is needed. A local that only
+ * ever holds numbers is kept as a primitive double. Calls of the function to itself go straight
+ * to the static method, and one in tail position jumps back to its start. Other tail calls are
+ * left to the trampoline in Function.invoke, like in the interpreter.
+ *
+ * Compiled code can create instances and use their fields and methods; each property access
+ * keeps its own caches, like the nodes do. Methods themselves are never compiled, so "dies" and
+ * "super" do not occur, and neither may a function or class declared inside the body: for
+ * those, compile returns null and the function stays with the interpreter.
+ */
+final class JitCompiler implements Expr.Visitor<Integer>, Stmt.Visitor<Void> {
+	// what an expression leaves on the operand stack
+	private static final int OBJECT = 0; // any Lox value, boxed
+	private static final int NUMBER = 1; // a double, two slots
+	private static final int BOOL = 2; // an int, 0 or 1
+
+	private static final String NAME = "LOX/CompiledFunction";
+	private static final String RUNTIME = "LOX/JitRuntime";
+	private static final String OBJECT_TYPE = "Ljava/lang/Object;";
+	private static final String INTERPRETER_TYPE = "LLOX/Interpreter;";
+	private static final String LIST_TYPE = "LLOX/LoxList;";
+	private static final String INSTANCE_TYPE = "LLOX/Instance;";
+	private static final String CALLABLE_TYPE = "LLOX/Callable;";
+	private static final String GET_TYPE = "LLOX/ExprNode$Get;";
+	private static final String SET_TYPE = "LLOX/ExprNode$Set;";
+
+	// thrown while compiling when the function uses something the JIT does not support
+	static final class Unsupported extends RuntimeException {
+		Unsupported(String reason) {
+			super(reason, null, false, false);
+		}
+	}
+
+	// a local variable or parameter of the compiled function
+	private static final class Local {
+		final boolean isParameter;
+		final List<Expr> assigned = new ArrayList<>(); // every value stored into it
+		boolean uninitialized = false; // declared without initializer, so it starts as nichts
+		boolean number = false; // only ever holds numbers: stored as a double
+		int slot;
+
+		Local(boolean isParameter) {
+			this.isParameter = isParameter;
+		}
+	}
+
+	private final Stmt.Function declaration;
+	private final String bodyDescriptor;
+	private final Map<Expr, Local> variables = new IdentityHashMap<>(); // Variable and Assign expressions
+	private final Map<Stmt.Var, Local> declarations = new IdentityHashMap<>();
+	private final List<Local> parameters = new ArrayList<>();
+	private final List<Local> locals = new ArrayList<>();
+	private final List<ExprNode> sites = new ArrayList<>(); // property access caches: SITE0, SITE1, ...
+	private final ClassFile classFile;
+	private Code code;
+	private int start; // label at the start of the body, where a tail call to itself jumps
+
+	private JitCompiler(Stmt.Function declaration) {
+		this.declaration = declaration;
+		this.bodyDescriptor = "(" + INTERPRETER_TYPE + OBJECT_TYPE.repeat(declaration.params.size()) + ")"
+				+ OBJECT_TYPE;
+		this.classFile = new ClassFile(NAME, "java/lang/Object", "LOX/CompiledCode");
+	}
+
+	// compiles function, null if it uses something the JIT cannot compile or the JVM refuses
+	// the class (a LinkageError such as VerifyError); anything else, a bug here or the stack or
+	// memory running out, propagates like it would from interpreting the function
+	static CompiledCode compile(Function function, Stmt.Function declaration) {
+		try {
+			return new JitCompiler(declaration).define(function);
+		} catch (Unsupported | LinkageError unsupported) {
+			return null;
+		}
+	}
+
+	private CompiledCode define(Function function) {
+		new Analysis().run();
+		inferNumbers();
+		byte[] bytes = generate();
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			java.lang.Class<?> type = lookup.lookupClass();
+			lookup.findStaticSetter(type, "SELF", Object.class).invoke((Object) function);
+			for (int i = 0; i < sites.size(); i++) {
+				ExprNode site = sites.get(i);
+				lookup.findStaticSetter(type, "SITE" + i, site.getClass()).invoke(site);
+			}
+			return (CompiledCode) lookup.findConstructor(type, MethodType.methodType(void.class)).invoke();
+		} catch (RuntimeException | Error error) {
+			throw error;
+		} catch (Throwable error) {
+			// the class was just defined with these very fields and constructor
+			throw new IllegalStateException(error);
+		}
+	}
+
+	// Analysis: which names are locals of the function, and every value assigned to each
+
+	private final class Analysis implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+		private final Stack<Map<String, Local>> scopes = new Stack<>();
+
+		void run() {
+			scopes.push(new HashMap<>());
+			for (Token param : declaration.params) {
+				Local parameter = new Local(true);
+				parameters.add(parameter);
+				scopes.peek().put(param.lexeme(), parameter);
+			}
+			resolve(declaration.body);
+		}
+
+		private void resolve(List<Stmt> statements) {
+			for (Stmt statement : statements) {
+				statement.accept(this);
+			}
+		}
+
+		private Local lookup(String name) {
+			for (int i = scopes.size() - 1; i >= 0; i--) {
+				Local local = scopes.get(i).get(name);
+				if (local != null)
+					return local;
+			}
+			return null; // a global
+		}
+
+		@Override
+		public Void visitBlockStmt(Stmt.Block stmt) {
+			scopes.push(new HashMap<>());
+			resolve(stmt.statements);
+			scopes.pop();
+			return null;
+		}
+
+		@Override
+		public Void visitClassStmt(Stmt.Class stmt) {
+			throw new Unsupported("Klasse");
+		}
+
+		@Override
+		public Void visitExpressionStmt(Stmt.Expression stmt) {
+			stmt.expression.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionStmt(Stmt.Function stmt) {
+			throw new Unsupported("verschachtelte Funktion");
+		}
+
+		@Override
+		public Void visitIfStmt(Stmt.If stmt) {
+			stmt.condition.accept(this);
+			stmt.thenBranch.accept(this);
+			if (stmt.elseBranch != null)
+				stmt.elseBranch.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitPrintStmt(Stmt.Print stmt) {
+			stmt.expression.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Stmt.Var stmt) {
+			// the Resolver rejects reading a variable in its own initializer, so the order is free
+			Local local = new Local(false);
+			if (stmt.initializer != null) {
+				stmt.initializer.accept(this);
+				local.assigned.add(stmt.initializer);
+			} else {
+				local.uninitialized = true;
+			}
+			locals.add(local);
+			declarations.put(stmt, local);
+			scopes.peek().put(stmt.name.lexeme(), local);
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStmt(Stmt.While stmt) {
+			stmt.condition.accept(this);
+			stmt.body.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitReturnStmt(Stmt.Return stmt) {
+			if (stmt.value != null)
+				stmt.value.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitAssignExpr(Expr.Assign expr) {
+			expr.value.accept(this);
+			Local local = lookup(expr.name.lexeme());
+			if (local != null) {
+				variables.put(expr, local);
+				local.assigned.add(expr.value);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitBinaryExpr(Expr.Binary expr) {
+			expr.left.accept(this);
+			expr.right.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitCallExpr(Expr.Call expr) {
+			expr.callee.accept(this);
+			for (Expr argument : expr.arguments) {
+				argument.accept(this);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitGetExpr(Expr.Get expr) {
+			expr.object.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitGroupingExpr(Expr.Grouping expr) {
+			expr.expression.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitLiteralExpr(Expr.Literal expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+			for (Expr element : expr.elements) {
+				element.accept(this);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitLogicalExpr(Expr.Logical expr) {
+			expr.left.accept(this);
+			expr.right.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitSetExpr(Expr.Set expr) {
+			expr.object.accept(this);
+			expr.value.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitSuperExpr(Expr.Super expr) {
+			throw new Unsupported("super");
+		}
+
+		@Override
+		public Void visitThisExpr(Expr.This expr) {
+			throw new Unsupported("dies");
+		}
+
+		@Override
+		public Void visitUnaryExpr(Expr.Unary expr) {
+			expr.right.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpr(Expr.Variable expr) {
+			Local local = lookup(expr.name.lexeme());
+			if (local != null)
+				variables.put(expr, local);
+			return null;
+		}
+	}
+
+	// Type inference: a local is a number if every value assigned to it is one.
+	// Starts optimistic and drops locals until nothing changes.
+
+	private void inferNumbers() {
+		for (Local local : locals) {
+			local.number = !local.uninitialized;
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Local local : locals) {
+				if (!local.number)
+					continue;
+				for (Expr value : local.assigned) {
+					if (typeOf(value) != NUMBER) {
+						local.number = false;
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private int typeOf(Expr expr) {
+		if (expr instanceof Expr.Literal) {
+			Object value = ((Expr.Literal) expr).value;
+			if (value instanceof Double)
+				return NUMBER;
+			return value instanceof Boolean ? BOOL : OBJECT;
+		}
+		if (expr instanceof Expr.Grouping)
+			return typeOf(((Expr.Grouping) expr).expression);
+		if (expr instanceof Expr.Unary)
+			return ((Expr.Unary) expr).operator.type == TokenType.MINUS ? NUMBER : BOOL;
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			switch (binary.operator.type) {
+			case PLUS:
+				return typeOf(binary.left) == NUMBER && typeOf(binary.right) == NUMBER ? NUMBER : OBJECT;
+			case MINUS:
+			case STAR:
+			case SLASH:
+				return NUMBER;
+			default:
+				return BOOL;
+			}
+		}
+		if (expr instanceof Expr.Variable || expr instanceof Expr.Assign) {
+			Local local = variables.get(expr);
+			return local != null && local.number ? NUMBER : OBJECT;
+		}
+		return OBJECT;
+	}
+
+	// Code generation
+
+	private byte[] generate() {
+		classFile.addStaticField("SELF", OBJECT_TYPE);
+
+		Code constructor = new Code(1);
+		constructor.local(Code.ALOAD, 0, 1);
+		constructor.op2(Code.INVOKESPECIAL, classFile.methodRef("java/lang/Object", "<init>", "()V"), -1);
+		constructor.op(Code.RETURN, 0);
+		classFile.addMethod(false, "<init>", "()V", constructor);
+
+		// call(interpreter, arguments) unpacks the list for the static body
+		Code bridge = new Code(3);
+		bridge.local(Code.ALOAD, 1, 1);
+		int get = classFile.interfaceMethodRef("java/util/List", "get", "(I)" + OBJECT_TYPE);
+		for (int i = 0; i < parameters.size(); i++) {
+			bridge.local(Code.ALOAD, 2, 1);
+			bridge.pushInt(i);
+			bridge.invokeInterface(get, 1, -1);
+		}
+		bridge.op2(Code.INVOKESTATIC, classFile.methodRef(NAME, "body", bodyDescriptor), stackEffect(bodyDescriptor));
+		bridge.op(Code.ARETURN, -1);
+		classFile.addMethod(false, "call", "(" + INTERPRETER_TYPE + "Ljava/util/List;)" + OBJECT_TYPE, bridge);
+
+		// body(interpreter, parameters...): slot 0 is the interpreter, then the parameters, then the locals
+		int slot = 1;
+		for (Local parameter : parameters) {
+			parameter.slot = slot++;
+		}
+		for (Local local : locals) {
+			local.slot = slot;
+			slot += local.number ? 2 : 1;
+		}
+		code = new Code(slot);
+		start = code.newLabel();
+		code.place(start);
+		for (Stmt statement : declaration.body) {
+			statement.accept(this);
+		}
+		code.op(Code.ACONST_NULL, 1);
+		code.op(Code.ARETURN, -1);
+		classFile.addMethod(true, "body", bodyDescriptor, code);
+
+		return classFile.toBytes();
+	}
+
+	// operand stack change of calling a method with this descriptor
+	private static int stackEffect(String descriptor) {
+		int arguments = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			char c = descriptor.charAt(i);
+			if (c == 'D' || c == 'J') {
+				arguments += 2;
+				i++;
+			} else {
+				arguments++;
+				while (descriptor.charAt(i) == '[')
+					i++;
+				i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+			}
+		}
+		char result = descriptor.charAt(i + 1);
+		int resultSize = result == 'V' ? 0 : (result == 'D' || result == 'J') ? 2 : 1;
+		return resultSize - arguments;
+	}
+
+	private void invokeStatic(String owner, String name, String descriptor) {
+		code.op2(Code.INVOKESTATIC, classFile.methodRef(owner, name, descriptor), stackEffect(descriptor));
+	}
+
+	private void runtime(String name, String descriptor) {
+		invokeStatic(RUNTIME, name, descriptor);
+	}
+
+	// a Get or Set node without operands, in a static field of its own: only its caches are used
+	private void pushSite(ExprNode site) {
+		String descriptor = "L" + site.getClass().getName().replace('.', '/') + ";";
+		String field = "SITE" + sites.size();
+		sites.add(site);
+		classFile.addStaticField(field, descriptor);
+		code.op2(Code.GETSTATIC, classFile.fieldRef(NAME, field, descriptor), 1);
+	}
+
+	private void pushString(String value) {
+		code.op2(Code.LDC_W, classFile.string(value), 1);
+	}
+
+	// the id of a global's name, which can outgrow sipush
+	private void pushSymbol(int symbol) {
+		if (symbol <= Short.MAX_VALUE) {
+			code.pushInt(symbol);
+		} else {
+			code.op2(Code.LDC_W, classFile.integer(symbol), 1);
+		}
+	}
+
+	private int emit(Expr expr) {
+		return expr.accept(this);
+	}
+
+	// leaves the value boxed, as a Lox value
+	private void object(Expr expr) {
+		box(emit(expr));
+	}
+
+	private void box(int type) {
+		if (type == NUMBER) {
+			invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+		} else if (type == BOOL) {
+			invokeStatic("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+		}
+	}
+
+	// leaves the truthiness as an int
+	private void condition(Expr expr) {
+		int type = emit(expr);
+		if (type == NUMBER) {
+			code.op(Code.POP2, -2);
+			code.op(Code.ICONST_1, 1);
+		} else if (type == OBJECT) {
+			runtime("isTruthy", "(" + OBJECT_TYPE + ")Z");
+		}
+	}
+
+	// evaluates both operands of an arithmetic or comparison operator, then makes both doubles;
+	// like the interpreter, a wrong operand is reported only after both have been evaluated
+	private void numberOperands(Expr left, Expr right, int line) {
+		int leftType = emit(left);
+		if (leftType == BOOL) {
+			box(BOOL);
+			leftType = OBJECT;
+		}
+		int rightType = emit(right);
+		if (rightType != NUMBER) {
+			box(rightType);
+			code.pushInt(line);
+			runtime("number", "(" + OBJECT_TYPE + "I)D");
+		}
+		if (leftType != NUMBER) {
+			// left is an object under the double: move it on top, convert it, swap back
+			code.op(Code.DUP2_X1, 2);
+			code.op(Code.POP2, -2);
+			code.pushInt(line);
+			runtime("number", "(" + OBJECT_TYPE + "I)D");
+			code.op(Code.DUP2_X2, 2);
+			code.op(Code.POP2, -2);
+		}
+	}
+
+	// turns the result of a double comparison into an int
+	private void compare(int compare, int jumpIfFalse) {
+		int isFalse = code.newLabel();
+		int end = code.newLabel();
+		code.op(compare, -3);
+		code.jump(jumpIfFalse, isFalse, -1);
+		code.op(Code.ICONST_1, 1);
+		code.jump(Code.GOTO, end, 0);
+		code.setStack(code.stack() - 1);
+		code.place(isFalse);
+		code.op(Code.ICONST_0, 1);
+		code.place(end);
+	}
+
+	// Statements: each one starts and ends with an empty operand stack
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		for (Stmt statement : stmt.statements) {
+			statement.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		throw new Unsupported("Klasse");
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		int type = emit(stmt.expression);
+		code.op(type == NUMBER ? Code.POP2 : Code.POP, type == NUMBER ? -2 : -1);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		throw new Unsupported("verschachtelte Funktion");
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		int elseBranch = code.newLabel();
+		int end = code.newLabel();
+		condition(stmt.condition);
+		code.jump(Code.IFEQ, elseBranch, -1);
+		stmt.thenBranch.accept(this);
+		code.jump(Code.GOTO, end, 0);
+		code.place(elseBranch);
+		if (stmt.elseBranch != null)
+			stmt.elseBranch.accept(this);
+		code.place(end);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		object(stmt.expression);
+		runtime("print", "(" + OBJECT_TYPE + ")V");
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		Local local = declarations.get(stmt);
+		if (stmt.initializer == null) {
+			code.op(Code.ACONST_NULL, 1);
+			code.local(Code.ASTORE, local.slot, -1);
+		} else if (local.number) {
+			emit(stmt.initializer);
+			code.local(Code.DSTORE, local.slot, -2);
+		} else {
+			object(stmt.initializer);
+			code.local(Code.ASTORE, local.slot, -1);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		int start = code.newLabel();
+		int end = code.newLabel();
+		code.place(start);
+		condition(stmt.condition);
+		code.jump(Code.IFEQ, end, -1);
+		stmt.body.accept(this);
+		code.jump(Code.GOTO, start, 0);
+		code.place(end);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value instanceof Expr.Call) {
+			tailCall((Expr.Call) stmt.value);
+			return null;
+		}
+		if (stmt.value != null) {
+			object(stmt.value);
+		} else {
+			code.op(Code.ACONST_NULL, 1);
+		}
+		code.op(Code.ARETURN, -1);
+		return null;
+	}
+
+	private void tailCall(Expr.Call expr) {
+		int line = expr.paren.line;
+		if (expr.callee instanceof Expr.Get) {
+			invoke((Expr.Get) expr.callee, expr.arguments, line, true);
+			code.op(Code.ARETURN, -1);
+			return;
+		}
+		if (isSelfCall(expr)) {
+			// like selfCall, but the arguments replace the parameters and the body starts over
+			int generic = code.newLabel();
+			object(expr.callee);
+			code.op(Code.DUP, 1);
+			code.op2(Code.GETSTATIC, classFile.fieldRef(NAME, "SELF", OBJECT_TYPE), 1);
+			code.jump(Code.IF_ACMPNE, generic, -2);
+			code.op(Code.POP, -1);
+			for (Expr argument : expr.arguments) {
+				object(argument); // all evaluated before the first parameter changes
+			}
+			for (int i = parameters.size() - 1; i >= 0; i--) {
+				code.local(Code.ASTORE, parameters.get(i).slot, -1);
+			}
+			code.jump(Code.GOTO, start, 0);
+
+			code.setStack(1);
+			code.place(generic); // the callee is on the stack
+			code.local(Code.ALOAD, 0, 1);
+			code.op(Code.SWAP, 0);
+		} else {
+			code.local(Code.ALOAD, 0, 1);
+			object(expr.callee);
+		}
+		code.pushInt(line);
+		runtime("callable", "(" + OBJECT_TYPE + "I)" + CALLABLE_TYPE);
+		arguments(expr.arguments);
+		code.pushInt(line);
+		runtime("tailCall", "(" + INTERPRETER_TYPE + CALLABLE_TYPE + "[" + OBJECT_TYPE + "I)" + OBJECT_TYPE);
+		code.op(Code.ARETURN, -1);
+	}
+
+	// Expressions: each returns the type it left on the stack
+
+	@Override
+	public Integer visitAssignExpr(Expr.Assign expr) {
+		Local local = variables.get(expr);
+		if (local == null) {
+			code.local(Code.ALOAD, 0, 1);
+			pushSymbol(expr.name.symbol);
+			object(expr.value);
+			code.pushInt(expr.name.line);
+			runtime("setGlobal", "(" + INTERPRETER_TYPE + "I" + OBJECT_TYPE + "I)" + OBJECT_TYPE);
+			return OBJECT;
+		}
+
+		if (local.number) {
+			emit(expr.value);
+			code.op(Code.DUP2, 2);
+			code.local(Code.DSTORE, local.slot, -2);
+			return NUMBER;
+		}
+		object(expr.value);
+		code.op(Code.DUP, 1);
+		code.local(Code.ASTORE, local.slot, -1);
+		return OBJECT;
+	}
+
+	@Override
+	public Integer visitBinaryExpr(Expr.Binary expr) {
+		int line = expr.operator.line;
+		switch (expr.operator.type) {
+		case PLUS:
+			if (typeOf(expr.left) == NUMBER && typeOf(expr.right) == NUMBER) {
+				emit(expr.left);
+				emit(expr.right);
+				code.op(Code.DADD, -2);
+				return NUMBER;
+			}
+			object(expr.left);
+			object(expr.right);
+			code.pushInt(line);
+			runtime("add", "(" + OBJECT_TYPE + OBJECT_TYPE + "I)" + OBJECT_TYPE);
+			return OBJECT;
+		case EQUAL_EQUAL:
+		case BANG_EQUAL:
+			if (typeOf(expr.left) == NUMBER && typeOf(expr.right) == NUMBER) {
+				emit(expr.left);
+				emit(expr.right);
+				runtime("equal", "(DD)Z");
+			} else {
+				object(expr.left);
+				object(expr.right);
+				runtime("isEqual", "(" + OBJECT_TYPE + OBJECT_TYPE + ")Z");
+			}
+			if (expr.operator.type == TokenType.BANG_EQUAL) {
+				code.op(Code.ICONST_1, 1);
+				code.op(Code.IXOR, -1);
+			}
+			return BOOL;
+		default:
+			break;
+		}
+
+		numberOperands(expr.left, expr.right, line);
+		switch (expr.operator.type) {
+		case MINUS:
+			code.op(Code.DSUB, -2);
+			return NUMBER;
+		case STAR:
+			code.op(Code.DMUL, -2);
+			return NUMBER;
+		case SLASH:
+			code.op(Code.DDIV, -2);
+			return NUMBER;
+		// dcmpg/dcmpl push 1/-1 for NaN, so every comparison with NaN is false
+		case LESS:
+			compare(Code.DCMPG, Code.IFGE);
+			return BOOL;
+		case LESS_EQUAL:
+			compare(Code.DCMPG, Code.IFGT);
+			return BOOL;
+		case GREATER:
+			compare(Code.DCMPL, Code.IFLE);
+			return BOOL;
+		case GREATER_EQUAL:
+			compare(Code.DCMPL, Code.IFLT);
+			return BOOL;
+		default:
+			throw new Unsupported("Operator " + expr.operator.type);
+		}
+	}
+
+	@Override
+	public Integer visitCallExpr(Expr.Call expr) {
+		int line = expr.paren.line;
+		if (isSelfCall(expr))
+			return selfCall(expr, line);
+		if (expr.callee instanceof Expr.Get) {
+			invoke((Expr.Get) expr.callee, expr.arguments, line, false);
+			return OBJECT;
+		}
+
+		code.local(Code.ALOAD, 0, 1);
+		object(expr.callee);
+		call(expr.arguments, line);
+		return OBJECT;
+	}
+
+	// the function calling itself by its global name, with the right number of arguments
+	private boolean isSelfCall(Expr.Call expr) {
+		if (!(expr.callee instanceof Expr.Variable) || variables.containsKey(expr.callee))
+			return false;
+		return ((Expr.Variable) expr.callee).name.lexeme().equals(declaration.name.lexeme())
+				&& expr.arguments.size() == declaration.params.size();
+	}
+
+	// the name may have been reassigned since, so the fast path checks it still holds this function;
+	// like any call, it reports the stack overflowing inside it at its own line
+	private int selfCall(Expr.Call expr, int line) {
+		int generic = code.newLabel();
+		int end = code.newLabel();
+		int tryStart = code.newLabel();
+		int tryEnd = code.newLabel();
+		int overflow = code.newLabel();
+
+		object(expr.callee);
+		code.op(Code.DUP, 1);
+		code.op2(Code.GETSTATIC, classFile.fieldRef(NAME, "SELF", OBJECT_TYPE), 1);
+		code.jump(Code.IF_ACMPNE, generic, -2);
+		code.op(Code.POP, -1);
+		code.local(Code.ALOAD, 0, 1);
+		for (Expr argument : expr.arguments) {
+			object(argument);
+		}
+		code.place(tryStart);
+		invokeStatic(NAME, "body", bodyDescriptor);
+		code.local(Code.ALOAD, 0, 1);
+		code.op(Code.SWAP, 0);
+		runtime("complete", "(" + INTERPRETER_TYPE + OBJECT_TYPE + ")" + OBJECT_TYPE);
+		code.place(tryEnd);
+		code.jump(Code.GOTO, end, 0);
+
+		int depth = code.stack();
+		code.handler(tryStart, tryEnd, overflow, classFile.classRef("java/lang/StackOverflowError"));
+		code.setStack(1);
+		code.place(overflow);
+		code.op(Code.POP, -1);
+		code.pushInt(line);
+		runtime("stackOverflow", "(I)LLOX/RuntimeError;");
+		code.op(Code.ATHROW, -1);
+
+		code.setStack(depth);
+		code.place(generic); // the callee is on the stack
+		code.local(Code.ALOAD, 0, 1);
+		code.op(Code.SWAP, 0);
+		call(expr.arguments, line);
+		code.place(end);
+		return OBJECT;
+	}
+
+	// the interpreter and the callee are on the stack; up to two arguments are passed one by one
+	private void call(List<Expr> arguments, int line) {
+		code.pushInt(line);
+		runtime("callable", "(" + OBJECT_TYPE + "I)" + CALLABLE_TYPE);
+		if (arguments.size() > 2) {
+			arguments(arguments);
+			code.pushInt(line);
+			runtime("call", "(" + INTERPRETER_TYPE + CALLABLE_TYPE + "[" + OBJECT_TYPE + "I)" + OBJECT_TYPE);
+			return;
+		}
+		StringBuilder descriptor = new StringBuilder("(" + INTERPRETER_TYPE + CALLABLE_TYPE);
+		for (Expr argument : arguments) {
+			object(argument);
+			descriptor.append(OBJECT_TYPE);
+		}
+		code.pushInt(line);
+		runtime("call" + arguments.size(), descriptor + "I)" + OBJECT_TYPE);
+	}
+
+	// obj.name(...) like ExprNode.Invoke: the receiver and what it calls are found before the
+	// arguments are evaluated, and a method is invoked without binding it
+	private void invoke(Expr.Get property, List<Expr> arguments, int line, boolean tail) {
+		String prefix = "(" + INTERPRETER_TYPE + INSTANCE_TYPE + CALLABLE_TYPE;
+		code.local(Code.ALOAD, 0, 1);
+		pushSite(new ExprNode.Get(null, property.name));
+		code.op(Code.DUP, 1);
+		object(property.object);
+		runtime("instance", "(" + GET_TYPE + OBJECT_TYPE + ")" + INSTANCE_TYPE);
+		code.op(Code.DUP_X1, 1); // interpreter, instance, site, instance
+		code.pushInt(line);
+		runtime("callee", "(" + GET_TYPE + INSTANCE_TYPE + "I)" + CALLABLE_TYPE);
+		if (tail || arguments.size() > 2) {
+			arguments(arguments);
+			code.pushInt(line);
+			runtime(tail ? "tailInvoke" : "invoke", prefix + "[" + OBJECT_TYPE + "I)" + OBJECT_TYPE);
+			return;
+		}
+		StringBuilder descriptor = new StringBuilder(prefix);
+		for (Expr argument : arguments) {
+			object(argument);
+			descriptor.append(OBJECT_TYPE);
+		}
+		code.pushInt(line);
+		runtime("invoke" + arguments.size(), descriptor + "I)" + OBJECT_TYPE);
+	}
+
+	private void arguments(List<Expr> arguments) {
+		code.pushInt(arguments.size());
+		code.op2(Code.ANEWARRAY, classFile.classRef("java/lang/Object"), 0);
+		for (int i = 0; i < arguments.size(); i++) {
+			code.op(Code.DUP, 1);
+			code.pushInt(i);
+			object(arguments.get(i));
+			code.op(Code.AASTORE, -3);
+		}
+	}
+
+	@Override
+	public Integer visitGetExpr(Expr.Get expr) {
+		pushSite(new ExprNode.Get(null, expr.name));
+		object(expr.object);
+		runtime("get", "(" + GET_TYPE + OBJECT_TYPE + ")" + OBJECT_TYPE);
+		return OBJECT;
+	}
+
+	@Override
+	public Integer visitGroupingExpr(Expr.Grouping expr) {
+		return emit(expr.expression);
+	}
+
+	@Override
+	public Integer visitLiteralExpr(Expr.Literal expr) {
+		Object value = expr.value;
+		if (value instanceof Double) {
+			code.op2(Code.LDC2_W, classFile.doubleConstant((double) value), 2);
+			return NUMBER;
+		}
+		if (value instanceof Boolean) {
+			code.op((boolean) value ? Code.ICONST_1 : Code.ICONST_0, 1);
+			return BOOL;
+		}
+		if (value instanceof String) {
+			pushString((String) value);
+			return OBJECT;
+		}
+		code.op(Code.ACONST_NULL, 1);
+		return OBJECT;
+	}
+
+	// numbers are added to the list unboxed
+	@Override
+	public Integer visitListLiteralExpr(Expr.ListLiteral expr) {
+		code.pushInt(expr.elements.size());
+		runtime("newList", "(I)" + LIST_TYPE);
+		for (Expr element : expr.elements) {
+			code.op(Code.DUP, 1);
+			int type = emit(element);
+			if (type == NUMBER) {
+				runtime("append", "(" + LIST_TYPE + "D)V");
+			} else {
+				box(type);
+				runtime("append", "(" + LIST_TYPE + OBJECT_TYPE + ")V");
+			}
+		}
+		return OBJECT;
+	}
+
+	// und / oder: the result is one of the operands, not a boolean
+	@Override
+	public Integer visitLogicalExpr(Expr.Logical expr) {
+		int end = code.newLabel();
+		object(expr.left);
+		code.op(Code.DUP, 1);
+		runtime("isTruthy", "(" + OBJECT_TYPE + ")Z");
+		code.jump(expr.operator.type == TokenType.OR ? Code.IFNE : Code.IFEQ, end, -1);
+		code.op(Code.POP, -1);
+		object(expr.right);
+		code.place(end);
+		return OBJECT;
+	}
+
+	@Override
+	public Integer visitSetExpr(Expr.Set expr) {
+		pushSite(new ExprNode.Set(null, expr.name, null));
+		code.op(Code.DUP, 1);
+		object(expr.object);
+		runtime("instance", "(" + SET_TYPE + OBJECT_TYPE + ")" + INSTANCE_TYPE);
+		object(expr.value);
+		runtime("set", "(" + SET_TYPE + INSTANCE_TYPE + OBJECT_TYPE + ")" + OBJECT_TYPE);
+		return OBJECT;
+	}
+
+	@Override
+	public Integer visitSuperExpr(Expr.Super expr) {
+		throw new Unsupported("super");
+	}
+
+	@Override
+	public Integer visitThisExpr(Expr.This expr) {
+		throw new Unsupported("dies");
+	}
+
+	@Override
+	public Integer visitUnaryExpr(Expr.Unary expr) {
+		if (expr.operator.type == TokenType.BANG) {
+			condition(expr.right);
+			code.op(Code.ICONST_1, 1);
+			code.op(Code.IXOR, -1);
+			return BOOL;
+		}
+
+		int type = emit(expr.right);
+		if (type != NUMBER) {
+			box(type);
+			code.pushInt(expr.operator.line);
+			runtime("operand", "(" + OBJECT_TYPE + "I)D");
+		}
+		code.op(Code.DNEG, 0);
+		return NUMBER;
+	}
+
+	@Override
+	public Integer visitVariableExpr(Expr.Variable expr) {
+		Local local = variables.get(expr);
+		if (local == null) {
+			code.local(Code.ALOAD, 0, 1);
+			pushSymbol(expr.name.symbol);
+			code.pushInt(expr.name.line);
+			runtime("getGlobal", "(" + INTERPRETER_TYPE + "II)" + OBJECT_TYPE);
+			return OBJECT;
+		}
+
+		if (local.number) {
+			code.local(Code.DLOAD, local.slot, 2);
+			return NUMBER;
+		}
+		code.local(Code.ALOAD, local.slot, 1);
+		return OBJECT;
+	}
+}
@@ -0,0 +1,245 @@
+package LOX;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+// Static helpers the JIT-compiled code calls for everything that is more than a few instructions.
+// They behave exactly like the corresponding nodes, down to the error messages; errors carry
+// only a line, which is all Lox.runtimeError prints of a token.
+final class JitRuntime {
+	private JitRuntime() {
+	}
+
+	static RuntimeError error(String message, int line) {
+		return new RuntimeError(new Token(TokenType.EOF, "", null, line), message);
+	}
+
+	// the stack ran out inside a call: reported at the call, like ExprNode.Call does
+	static RuntimeError stackOverflow(int line) {
+		return error("Stapelüberlauf.", line);
+	}
+
+	// an operand of a binary operator
+	static double number(Object value, int line) {
+		if (value instanceof Double)
+			return (double) value;
+		throw error("Operanden müssen Zahlen sein.", line);
+	}
+
+	// the operand of unary -
+	static double operand(Object value, int line) {
+		if (value instanceof Double)
+			return (double) value;
+		throw error("Operand muss eine Zahl sein.", line);
+	}
+
+	static Object add(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a + (double) b;
+		if (Rope.isString(a) && Rope.isString(b)) {
+			if (!Rope.fits(a, b))
+				throw error("Zeichenkette zu lang.", line);
+			return Rope.concat(a, b);
+		}
+		throw error("Operanden müssen zwei Zahlen oder zwei Zeichenketten sein.", line);
+	}
+
+	// == on two numbers, like Double.equals
+	static boolean equal(double a, double b) {
+		return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+	}
+
+	static boolean isEqual(Object a, Object b) {
+		return Interpreter.isEqual(a, b);
+	}
+
+	static boolean isTruthy(Object value) {
+		return Interpreter.isTruthy(value);
+	}
+
+	static void print(Object value) {
+		System.out.println(Builtins.stringify(value));
+	}
+
+	// globals are passed by symbol id; the token is only built for the error
+	static Object getGlobal(Interpreter interpreter, int symbol, int line) {
+		return interpreter.globals.get(symbol, line);
+	}
+
+	static Object setGlobal(Interpreter interpreter, int symbol, Object value, int line) {
+		interpreter.globals.assign(symbol, value, line);
+		return value;
+	}
+
+	static Callable callable(Object callee, int line) {
+		if (callee instanceof Callable)
+			return (Callable) callee;
+		throw error("Kann nur Funktionen und Klassen aufrufen.", line);
+	}
+
+	static Object call(Interpreter interpreter, Callable callee, Object[] arguments, int line) {
+		checkArity(callee, arguments.length, line);
+		try {
+			return callee.callN(interpreter, arguments);
+		} catch (Builtins.NativeError e) {
+			throw error(e.getMessage(), line);
+		} catch (StackOverflowError e) {
+			throw stackOverflow(line);
+		}
+	}
+
+	// calls with up to two arguments pass them one by one, so a native gets them without an array
+	static Object call0(Interpreter interpreter, Callable callee, int line) {
+		checkArity(callee, 0, line);
+		try {
+			return callee.call0(interpreter);
+		} catch (Builtins.NativeError e) {
+			throw error(e.getMessage(), line);
+		} catch (StackOverflowError e) {
+			throw stackOverflow(line);
+		}
+	}
+
+	static Object call1(Interpreter interpreter, Callable callee, Object a, int line) {
+		checkArity(callee, 1, line);
+		try {
+			return callee.call1(interpreter, a);
+		} catch (Builtins.NativeError e) {
+			throw error(e.getMessage(), line);
+		} catch (StackOverflowError e) {
+			throw stackOverflow(line);
+		}
+	}
+
+	static Object call2(Interpreter interpreter, Callable callee, Object a, Object b, int line) {
+		checkArity(callee, 2, line);
+		try {
+			return callee.call2(interpreter, a, b);
+		} catch (Builtins.NativeError e) {
+			throw error(e.getMessage(), line);
+		} catch (StackOverflowError e) {
+			throw stackOverflow(line);
+		}
+	}
+
+	private static void checkArity(Callable callee, int count, int line) {
+		if (count != callee.arity()) {
+			throw error("Erwartet " + callee.arity() + " Argumente, aber erhalten " + count + ".", line);
+		}
+	}
+
+	// zurückgeben f(...) of anything but the function itself: a Lox function is left to the
+	// trampoline of the Function.invoke that runs this body
+	static Object tailCall(Interpreter interpreter, Callable callee, Object[] arguments, int line) {
+		if (!(callee instanceof Function))
+			return call(interpreter, callee, arguments, line);
+		checkArity(callee, arguments.length, line);
+		return ((Function) callee).tailCall(interpreter, Arrays.asList(arguments));
+	}
+
+	// the result of calling the body directly, which may have ended in a tail call
+	static Object complete(Interpreter interpreter, Object result) {
+		return result == Function.TAIL_CALL ? Function.trampoline(interpreter) : result;
+	}
+
+	static LoxList newList(int capacity) {
+		return new LoxList(capacity);
+	}
+
+	// an element of a list literal; numbers come unboxed
+	static void append(LoxList list, double value) {
+		list.addNumber(value);
+	}
+
+	static void append(LoxList list, Object value) {
+		list.add(value);
+	}
+
+	// obj.name, obj.name = value and obj.name(...): each site keeps a Get or Set node without
+	// operands, whose caches and name token it uses for the object the compiled code evaluated
+	static Object get(ExprNode.Get site, Object object) {
+		return site.get(site.instance(object));
+	}
+
+	static Instance instance(ExprNode.Set site, Object object) {
+		return site.instance(object);
+	}
+
+	static Object set(ExprNode.Set site, Instance instance, Object value) {
+		return site.store(instance, value);
+	}
+
+	static Instance instance(ExprNode.Get site, Object object) {
+		return site.instance(object);
+	}
+
+	// what obj.name(...) calls, found before the arguments are evaluated: the field's value,
+	// or else the method, which is invoked with obj instead of being bound to it
+	static Callable callee(ExprNode.Get site, Instance instance, int line) {
+		int offset = site.fieldOffset(instance);
+		if (offset >= 0)
+			return callable(instance.fields[offset], line);
+		return site.method(instance);
+	}
+
+	static Object invoke(Interpreter interpreter, Instance instance, Callable callee, Object[] arguments,
+			int line) {
+		if (!isMethod(callee))
+			return call(interpreter, callee, arguments, line);
+		checkArity(callee, arguments.length, line);
+		try {
+			return ((Function) callee).invoke(interpreter, instance, Arrays.asList(arguments));
+		} catch (StackOverflowError e) {
+			throw stackOverflow(line);
+		}
+	}
+
+	static Object invoke0(Interpreter interpreter, Instance instance, Callable callee, int line) {
+		if (!isMethod(callee))
+			return call0(interpreter, callee, line);
+		checkArity(callee, 0, line);
+		try {
+			return ((Function) callee).invoke(interpreter, instance, Collections.emptyList());
+		} catch (StackOverflowError e) {
+			throw stackOverflow(line);
+		}
+	}
+
+	static Object invoke1(Interpreter interpreter, Instance instance, Callable callee, Object a,
+			int line) {
+		if (!isMethod(callee))
+			return call1(interpreter, callee, a, line);
+		checkArity(callee, 1, line);
+		try {
+			return ((Function) callee).invoke(interpreter, instance, Collections.singletonList(a));
+		} catch (StackOverflowError e) {
+			throw stackOverflow(line);
+		}
+	}
+
+	static Object invoke2(Interpreter interpreter, Instance instance, Callable callee, Object a, Object b,
+			int line) {
+		if (!isMethod(callee))
+			return call2(interpreter, callee, a, b, line);
+		checkArity(callee, 2, line);
+		try {
+			return ((Function) callee).invoke(interpreter, instance, Arrays.asList(a, b));
+		} catch (StackOverflowError e) {
+			throw stackOverflow(line);
+		}
+	}
+
+	// zurückgeben obj.name(...)
+	static Object tailInvoke(Interpreter interpreter, Instance instance, Callable callee, Object[] arguments,
+			int line) {
+		if (!isMethod(callee))
+			return tailCall(interpreter, callee, arguments, line);
+		checkArity(callee, arguments.length, line);
+		return ((Function) callee).tailCall(interpreter, instance, Arrays.asList(arguments));
+	}
+
+	// a field never holds an unbound method, so this tells callee's two sources apart
+	private static boolean isMethod(Callable callee) {
+		return callee instanceof Function && ((Function) callee).isUnbound();
+	}
+}
@@ -8,33 +8,69 @@ package LOX;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 public class Lox {
 
     private static final Interpreter interpreter = new Interpreter();
+    private static VM vm = null; // set by --vm: run programs on the bytecode VM instead
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Benutzung: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        int first = 0;
+        if (args.length > 0 && args[0].equals("--vm")) {
+            // --max-tiefe=N: how deep calls may nest on the VM's heap-allocated call stack
+            int maxDepth = VM.DEFAULT_MAX_DEPTH;
+            first = 1;
+            if (args.length > 1 && args[1].startsWith("--max-tiefe=")) {
+                maxDepth = parseDepth(args[1].substring("--max-tiefe=".length()));
+                first = 2;
+            }
+            vm = new VM(maxDepth);
+        }
+
+        if (args.length - first > 1) {
+            usage();
+        } else if (args.length - first == 1) {
+            runFile(args[first]);
         } else {
             runPrompt();
         }
     }
 
+    private static void usage() {
+        System.out.println("Benutzung: jlox [--vm [--max-tiefe=N]] [script]");
+        System.exit(64);
+    }
+
+    private static int parseDepth(String value) {
+        try {
+            int depth = Integer.parseInt(value);
+            if (depth > 0)
+                return depth;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        usage();
+        return 0;
+    }
+
     private static void runFile(String path) throws IOException {
         Path finalPath = Paths.get(path);
-        byte[] bytes = Files.readAllBytes(finalPath);
-        run(new String(bytes, Charset.forName("UTF-8"))); // ensures German characters are safe
+        // the scanner reads the UTF-8 bytes of the mapped file, so the script is never copied
+        // onto the heap, as bytes or as a String; the mapping outlives the channel
+        MappedByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(finalPath, StandardOpenOption.READ)) {
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        run(new Scanner(bytes));
 
         if (hadError)
             System.exit(65);
@@ -51,14 +87,13 @@ public class Lox {
             String line = reader.readLine();
             if (line == null)
                 break;
-            run(line);
+            run(new Scanner(line));
             hadError = false;
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    private static void run(Scanner scanner) {
+        TokenStream tokens = scanner.scanTokens();
 
         Parser parser = new Parser(tokens);
         List<Stmt> statements = parser.parse();
@@ -66,9 +101,41 @@ public class Lox {
 
         Resolver resolver = new Resolver(interpreter);
         resolver.resolve(statements);
-        if (hadError) return;
+        if (hadError) {
+            interpreter.forgetResolved();
+            return;
+        }
+
+        // the optimizer adds variables and scopes for what it hoists out of loops, so the
+        // optimized program is resolved again
+        statements = new Optimizer().optimize(statements);
+        new Resolver(interpreter).resolve(statements);
+
+        if (vm != null) {
+            // the VM's compiler resolves names itself and never reads the interpreter's tables,
+            // which would otherwise keep every line of a REPL session alive
+            interpreter.forgetResolved();
+            vm.interpret(statements);
+        } else {
+            interpreter.interpret(statements);
+        }
+    }
+
+    // the script as the Java source of a class, for TOOL.CompileLox; null if it has errors,
+    // which have been reported like for a script that is run
+    public static String toJava(String source, String className) {
+        Scanner scanner = new Scanner(source);
+        TokenStream tokens = scanner.scanTokens();
+
+        Parser parser = new Parser(tokens);
+        List<Stmt> statements = parser.parse();
+        if (hadError) return null;
+
+        Resolver resolver = new Resolver(new Interpreter());
+        resolver.resolve(statements);
+        if (hadError) return null;
 
-        interpreter.interpret(statements);
+        return new JavaTranspiler(className).transpile(statements);
     }
 
     static void error(int line, String message) {
@@ -76,7 +143,7 @@ public class Lox {
     }
 
     static void error(Token token, String message) {
-        report(token.line, " bei '" + token.lexeme + "'", message);
+        report(token.line, " bei '" + token.lexeme() + "'", message);
     }
 
     static void runtimeError(RuntimeError error) {
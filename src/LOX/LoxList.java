@@ -0,0 +1,84 @@
+package LOX;
+
+import java.util.Arrays;
+
+// The list of German Lox: [1, 2, 3]. While every element is a number, the elements sit in a
+// double[], 8 bytes each and never boxed; the first element that is not a number moves them
+// all into an Object[], for good. Like instances, lists are equal only to themselves.
+public final class LoxList {
+	private double[] numbers; // null once the list holds anything but numbers
+	private Object[] values; // null while it holds only numbers
+	private int size = 0;
+
+	public LoxList(int capacity) {
+		numbers = new double[Math.max(capacity, 4)];
+	}
+
+	int size() {
+		return size;
+	}
+
+	Object get(int index) {
+		if (numbers != null)
+			return numbers[index];
+		return values[index];
+	}
+
+	public void add(Object value) {
+		if (numbers != null) {
+			if (value instanceof Double) {
+				addNumber((double) value);
+				return;
+			}
+			generalize();
+		}
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+		values[size++] = value;
+	}
+
+	boolean isNumeric() {
+		return numbers != null;
+	}
+
+	void addNumber(double value) {
+		if (numbers == null) {
+			add(value);
+			return;
+		}
+		if (size == numbers.length)
+			numbers = Arrays.copyOf(numbers, size * 2);
+		numbers[size++] = value;
+	}
+
+	void set(int index, Object value) {
+		if (numbers != null) {
+			if (value instanceof Double) {
+				numbers[index] = (double) value;
+				return;
+			}
+			generalize();
+		}
+		values[index] = value;
+	}
+
+	// boxes the numbers into an Object[] with the same room
+	private void generalize() {
+		values = new Object[numbers.length];
+		for (int i = 0; i < size; i++) {
+			values[i] = numbers[i];
+		}
+		numbers = null;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0)
+				text.append(", ");
+			text.append(Builtins.stringify(get(i)));
+		}
+		return text.append("]").toString();
+	}
+}
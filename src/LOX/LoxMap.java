@@ -0,0 +1,268 @@
+package LOX;
+
+import java.util.Arrays;
+
+// The map of German Lox (karte()): open-addressing hash tables with linear probing, in
+// parallel arrays instead of one entry object per key. Number keys have a table of their own
+// in which they stay unboxed, as the bits of the double, so finding one compares longs and
+// touches only the key and value arrays; every other key sits in the second table with its
+// hash, which is compared before the key itself. Removing shifts the entries after the hole
+// back, so neither table fills up with tombstones.
+// Keys are equal when == says they are: numbers and strings by value, anything else only
+// to itself.
+public final class LoxMap {
+	// a NaN that Double.doubleToLongBits never returns: marks a free slot of the number table
+	private static final long FREE = 0x7FF0_0000_0000_0001L;
+	private static final Object NIL = new Object(); // the key nichts
+
+	private long[] numberKeys = freeSlots(8);
+	private Object[] numberValues = new Object[8];
+	private int numberCount = 0;
+
+	private Object[] keys = new Object[8]; // null: the slot is free
+	private int[] hashes = new int[8];
+	private Object[] values = new Object[8];
+	private int count = 0;
+
+	int size() {
+		return numberCount + count;
+	}
+
+	// the value of key, null (nichts) if the map does not have it
+	Object get(Object key) {
+		if (key instanceof Double) {
+			int slot = findNumber(Double.doubleToLongBits((double) key));
+			return slot < 0 ? null : numberValues[slot];
+		}
+		int slot = find(normalize(key));
+		return slot < 0 ? null : values[slot];
+	}
+
+	void put(Object key, Object value) {
+		if (key instanceof Double) {
+			putNumber(Double.doubleToLongBits((double) key), value);
+			return;
+		}
+		key = normalize(key);
+		int slot = find(key);
+		if (slot >= 0) {
+			values[slot] = value;
+			return;
+		}
+		// at most half full, so probe sequences stay short
+		if ((count + 1) * 2 > keys.length)
+			resize(keys.length * 2);
+		int hash = hash(key);
+		slot = hash & (keys.length - 1);
+		while (keys[slot] != null) {
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		keys[slot] = key;
+		hashes[slot] = hash;
+		values[slot] = value;
+		count++;
+	}
+
+	// removes key; returns its value, null if the map did not have it
+	Object remove(Object key) {
+		if (key instanceof Double)
+			return removeNumber(Double.doubleToLongBits((double) key));
+		int slot = find(normalize(key));
+		if (slot < 0)
+			return null;
+		Object value = values[slot];
+
+		int mask = keys.length - 1;
+		int hole = slot;
+		for (int next = (hole + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+			if (canFill(hole, next, hashes[next] & mask, mask)) {
+				keys[hole] = keys[next];
+				hashes[hole] = hashes[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+		}
+		keys[hole] = null;
+		values[hole] = null;
+		count--;
+		return value;
+	}
+
+	// the keys, in no particular order
+	LoxList keys() {
+		LoxList list = new LoxList(size());
+		for (long bits : numberKeys) {
+			if (bits != FREE)
+				list.addNumber(Double.longBitsToDouble(bits));
+		}
+		for (Object key : keys) {
+			if (key != null)
+				list.add(key == NIL ? null : key);
+		}
+		return list;
+	}
+
+	// Number keys
+
+	private int findNumber(long bits) {
+		int mask = numberKeys.length - 1;
+		int slot = hash(bits) & mask;
+		while (numberKeys[slot] != FREE) {
+			if (numberKeys[slot] == bits)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void putNumber(long bits, Object value) {
+		int slot = findNumber(bits);
+		if (slot >= 0) {
+			numberValues[slot] = value;
+			return;
+		}
+		if ((numberCount + 1) * 2 > numberKeys.length)
+			resizeNumbers(numberKeys.length * 2);
+		int mask = numberKeys.length - 1;
+		slot = hash(bits) & mask;
+		while (numberKeys[slot] != FREE) {
+			slot = (slot + 1) & mask;
+		}
+		numberKeys[slot] = bits;
+		numberValues[slot] = value;
+		numberCount++;
+	}
+
+	private Object removeNumber(long bits) {
+		int slot = findNumber(bits);
+		if (slot < 0)
+			return null;
+		Object value = numberValues[slot];
+
+		int mask = numberKeys.length - 1;
+		int hole = slot;
+		for (int next = (hole + 1) & mask; numberKeys[next] != FREE; next = (next + 1) & mask) {
+			if (canFill(hole, next, hash(numberKeys[next]) & mask, mask)) {
+				numberKeys[hole] = numberKeys[next];
+				numberValues[hole] = numberValues[next];
+				hole = next;
+			}
+		}
+		numberKeys[hole] = FREE;
+		numberValues[hole] = null;
+		numberCount--;
+		return value;
+	}
+
+	private void resizeNumbers(int capacity) {
+		long[] oldKeys = numberKeys;
+		Object[] oldValues = numberValues;
+		numberKeys = freeSlots(capacity);
+		numberValues = new Object[capacity];
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == FREE)
+				continue;
+			int slot = hash(oldKeys[i]) & mask;
+			while (numberKeys[slot] != FREE) {
+				slot = (slot + 1) & mask;
+			}
+			numberKeys[slot] = oldKeys[i];
+			numberValues[slot] = oldValues[i];
+		}
+	}
+
+	private static long[] freeSlots(int capacity) {
+		long[] slots = new long[capacity];
+		Arrays.fill(slots, FREE);
+		return slots;
+	}
+
+	// Other keys
+
+	// a rope and the equal String are one key; nichts gets a marker, as null means a free slot
+	private static Object normalize(Object key) {
+		if (key instanceof Rope)
+			return key.toString();
+		return key == null ? NIL : key;
+	}
+
+	private int find(Object key) {
+		int mask = keys.length - 1;
+		int hash = hash(key);
+		int slot = hash & mask;
+		while (keys[slot] != null) {
+			if (hashes[slot] == hash && (keys[slot] == key || keys[slot].equals(key)))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void resize(int capacity) {
+		Object[] oldKeys = keys;
+		int[] oldHashes = hashes;
+		Object[] oldValues = values;
+		keys = new Object[capacity];
+		hashes = new int[capacity];
+		values = new Object[capacity];
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null)
+				continue;
+			int slot = oldHashes[i] & mask;
+			while (keys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			hashes[slot] = oldHashes[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	// Hashing
+
+	// whether the entry at next, whose probe started at home, may move back into the hole:
+	// only if home does not lie cyclically in (hole, next]
+	private static boolean canFill(int hole, int next, int home, int mask) {
+		return ((next - home) & mask) >= ((next - hole) & mask);
+	}
+
+	private static int hash(long bits) {
+		return mix(Long.hashCode(bits));
+	}
+
+	private static int hash(Object key) {
+		return mix(key == NIL ? 0 : key.hashCode());
+	}
+
+	// spreads the bits (murmur3's finalizer): the hashes of whole numbers differ only in
+	// their high bits, and the slot is taken from the low ones
+	private static int mix(int hash) {
+		hash = (hash ^ (hash >>> 16)) * 0x85EBCA6B;
+		hash = (hash ^ (hash >>> 13)) * 0xC2B2AE35;
+		return hash ^ (hash >>> 16);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("{");
+		for (int slot = 0; slot < numberKeys.length; slot++) {
+			if (numberKeys[slot] != FREE)
+				entry(text, Double.longBitsToDouble(numberKeys[slot]), numberValues[slot]);
+		}
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != null)
+				entry(text, keys[slot] == NIL ? null : keys[slot], values[slot]);
+		}
+		return text.append("}").toString();
+	}
+
+	private static void entry(StringBuilder text, Object key, Object value) {
+		if (text.length() > 1)
+			text.append(", ");
+		text.append(Builtins.stringify(key)).append(": ").append(Builtins.stringify(value));
+	}
+}
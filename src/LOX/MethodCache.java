@@ -0,0 +1,55 @@
+package LOX;
+
+import java.util.Arrays;
+
+// Inline cache of one call site (a Get or Super node): which method findMethod returned
+// for a class, so the next lookup on the same class is a reference comparison instead of a hash lookup.
+//   monomorphic:  one class seen, one comparison
+//   polymorphic:  up to POLYMORPHIC_LIMIT classes, compared in the order they were seen
+//   megamorphic:  more classes than that; the site stops caching and always calls findMethod
+// Entries never go stale: the methods of a class do not change after it is created.
+final class MethodCache {
+	private static final int POLYMORPHIC_LIMIT = 4;
+
+	private final String name;
+	private Class[] classes = new Class[1];
+	private Function[] methods = new Function[1];
+	private int size = 0;
+	private boolean megamorphic = false;
+
+	MethodCache(String name) {
+		this.name = name;
+	}
+
+	// the method called name in klass or its superclasses, null if there is none (cached as well)
+	Function lookup(Class klass) {
+		for (int i = 0; i < size; i++) {
+			if (classes[i] == klass)
+				return methods[i];
+		}
+
+		Function method = klass.findMethod(name);
+		if (!megamorphic)
+			add(klass, method);
+		return method;
+	}
+
+	private void add(Class klass, Function method) {
+		if (size == POLYMORPHIC_LIMIT) {
+			// too many shapes at this site: searching the entries would cost more than it saves
+			megamorphic = true;
+			classes = null;
+			methods = null;
+			size = 0;
+			return;
+		}
+
+		if (size == classes.length) {
+			classes = Arrays.copyOf(classes, POLYMORPHIC_LIMIT);
+			methods = Arrays.copyOf(methods, POLYMORPHIC_LIMIT);
+		}
+		classes[size] = klass;
+		methods[size] = method;
+		size++;
+	}
+}
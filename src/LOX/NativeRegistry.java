@@ -0,0 +1,98 @@
+package LOX;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// The native functions a program starts with, from Builtins, registered by arity. Each one
+// becomes a Callable that overrides the call of its arity, so a call site that knows how many
+// arguments it has passes them straight through, without a List or an array.
+// The Interpreter and the VM both define their globals from standard().
+final class NativeRegistry implements Builtins.Registry {
+	private final Map<String, Callable> natives = new LinkedHashMap<>();
+
+	static NativeRegistry standard() {
+		NativeRegistry registry = new NativeRegistry();
+		Builtins.define(registry);
+		return registry;
+	}
+
+	@Override
+	public void register0(String name, Builtins.Native0 body) {
+		natives.put(name, new Native(0) {
+			@Override
+			public Object call0(Interpreter interpreter) {
+				return body.call();
+			}
+		});
+	}
+
+	@Override
+	public void register1(String name, Builtins.Native1 body) {
+		natives.put(name, new Native(1) {
+			@Override
+			public Object call1(Interpreter interpreter, Object a) {
+				return body.call(a);
+			}
+		});
+	}
+
+	@Override
+	public void register2(String name, Builtins.Native2 body) {
+		natives.put(name, new Native(2) {
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b) {
+				return body.call(a, b);
+			}
+		});
+	}
+
+	@Override
+	public void registerN(String name, int arity, Builtins.NativeN body) {
+		natives.put(name, new Native(arity) {
+			@Override
+			public Object callN(Interpreter interpreter, Object[] arguments) {
+				return body.call(arguments);
+			}
+		});
+	}
+
+	// hands every native to define, in the order they were registered
+	void forEach(BiConsumer<String, Callable> define) {
+		natives.forEach(define);
+	}
+
+	// a native overrides only the call of its arity; a caller with a List is routed there
+	private abstract static class Native implements Callable {
+		private final int arity;
+
+		Native(int arity) {
+			this.arity = arity;
+		}
+
+		@Override
+		public int arity() {
+			return arity;
+		}
+
+		@Override
+		public Object call(Interpreter interpreter, List<Object> arguments) {
+			switch (arity) {
+			case 0:
+				return call0(interpreter);
+			case 1:
+				return call1(interpreter, arguments.get(0));
+			case 2:
+				return call2(interpreter, arguments.get(0), arguments.get(1));
+			default:
+				return callN(interpreter, arguments.toArray());
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "<native fn>";
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package LOX;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Turns the resolved AST into a tree of executable nodes, once, before it runs.
+ * Every decision the interpreter used to make on each evaluation is made here instead:
+ * which operator a Binary is, where a variable lives, how big a frame has to be.
+ * Blocks that declare nothing get no frame of their own, so the Resolver's depths
+ * are translated into the number of frames that actually exist at runtime.
+ */
+class NodeCompiler implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+	private final Interpreter interpreter;
+	// the Resolver's scopes, innermost last: true if the scope has its own Environment at runtime
+	private final List<Boolean> scopes = new ArrayList<>();
+
+	NodeCompiler(Interpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	StmtNode[] compile(List<Stmt> statements) {
+		StmtNode[] nodes = new StmtNode[statements.size()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = compile(statements.get(i));
+		}
+		return nodes;
+	}
+
+	private StmtNode compile(Stmt stmt) {
+		return stmt.accept(this);
+	}
+
+	private ExprNode compile(Expr expr) {
+		return expr.accept(this);
+	}
+
+	// number of slots a scope needs: one per declaration directly inside it
+	private static int countDeclarations(List<Stmt> statements) {
+		int count = 0;
+		for (Stmt statement : statements) {
+			if (statement instanceof Stmt.Var || statement instanceof Stmt.Function
+					|| statement instanceof Stmt.Class) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// translates how many scopes up the Resolver found a variable into how many frames up it is
+	private int runtimeDepth(int depth) {
+		int frames = 0;
+		for (int i = scopes.size() - depth; i < scopes.size(); i++) {
+			if (scopes.get(i))
+				frames++;
+		}
+		return frames;
+	}
+
+	// Statements
+
+	@Override
+	public StmtNode visitBlockStmt(Stmt.Block stmt) {
+		int frameSize = countDeclarations(stmt.statements);
+		scopes.add(frameSize > 0);
+		StmtNode[] statements = compile(stmt.statements);
+		scopes.remove(scopes.size() - 1);
+
+		if (frameSize == 0)
+			return new StmtNode.Sequence(statements);
+		return new StmtNode.Block(statements, frameSize);
+	}
+
+	@Override
+	public StmtNode visitClassStmt(Stmt.Class stmt) {
+		ExprNode superclass = null;
+		if (stmt.superclass != null) {
+			superclass = compile(stmt.superclass);
+			scopes.add(true); // "super"
+		}
+
+		StmtNode.Function[] methods = new StmtNode.Function[stmt.methods.size()];
+		for (int i = 0; i < methods.length; i++) {
+			methods[i] = function(stmt.methods.get(i), true);
+		}
+
+		if (stmt.superclass != null)
+			scopes.remove(scopes.size() - 1);
+
+		Token superclassName = stmt.superclass == null ? null : stmt.superclass.name;
+		return new StmtNode.Class(stmt.name, superclass, superclassName, methods);
+	}
+
+	@Override
+	public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+		return new StmtNode.Expression(compile(stmt.expression));
+	}
+
+	@Override
+	public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+		return function(stmt, false);
+	}
+
+	// the parameters and the body share one frame, created by each call;
+	// a method's frame starts with "dies" in slot 0
+	private StmtNode.Function function(Stmt.Function stmt, boolean isMethod) {
+		scopes.add(true);
+		StmtNode body = new StmtNode.Sequence(compile(stmt.body));
+		scopes.remove(scopes.size() - 1);
+		int frameSize = (isMethod ? 1 : 0) + stmt.params.size() + countDeclarations(stmt.body);
+		return new StmtNode.Function(stmt, body, frameSize);
+	}
+
+	@Override
+	public StmtNode visitIfStmt(Stmt.If stmt) {
+		StmtNode elseBranch = stmt.elseBranch == null ? null : compile(stmt.elseBranch);
+		return new StmtNode.If(compile(stmt.condition), compile(stmt.thenBranch), elseBranch);
+	}
+
+	@Override
+	public StmtNode visitPrintStmt(Stmt.Print stmt) {
+		return new StmtNode.Print(compile(stmt.expression));
+	}
+
+	@Override
+	public StmtNode visitReturnStmt(Stmt.Return stmt) {
+		if (interpreter.isTailCall(stmt))
+			return new StmtNode.TailCall(interpreter, compile(stmt.value));
+		return new StmtNode.Return(interpreter, stmt.value == null ? null : compile(stmt.value));
+	}
+
+	@Override
+	public StmtNode visitVarStmt(Stmt.Var stmt) {
+		return new StmtNode.Var(stmt.name, stmt.initializer == null ? null : compile(stmt.initializer));
+	}
+
+	@Override
+	public StmtNode visitWhileStmt(Stmt.While stmt) {
+		return new StmtNode.While(compile(stmt.condition), compile(stmt.body));
+	}
+
+	// Expressions
+
+	@Override
+	public ExprNode visitAssignExpr(Expr.Assign expr) {
+		ExprNode value = compile(expr.value);
+		Interpreter.Slot slot = interpreter.slotOf(expr);
+		if (slot == null)
+			return new ExprNode.AssignGlobal(interpreter.globals, expr.name, value);
+
+		int depth = runtimeDepth(slot.depth);
+		if (depth == 0)
+			return new ExprNode.AssignLocal(slot.index, value);
+		return new ExprNode.AssignEnclosing(depth, slot.index, value);
+	}
+
+	@Override
+	public ExprNode visitBinaryExpr(Expr.Binary expr) {
+		ExprNode left = compile(expr.left);
+		ExprNode right = compile(expr.right);
+		Token operator = expr.operator;
+
+		switch (operator.type) {
+		case GREATER:
+			return new ExprNode.Greater(left, operator, right);
+		case GREATER_EQUAL:
+			return new ExprNode.GreaterEqual(left, operator, right);
+		case LESS:
+			if (left instanceof ExprNode.Local && right instanceof ExprNode.Local) {
+				return new ExprNode.LessLocals(((ExprNode.Local) left).slot, operator, ((ExprNode.Local) right).slot);
+			}
+			if (left instanceof ExprNode.Local && right instanceof ExprNode.Constant
+					&& ((ExprNode.Constant) right).value instanceof Double) {
+				return new ExprNode.LessLocalConstant(((ExprNode.Local) left).slot, operator,
+						(double) ((ExprNode.Constant) right).value);
+			}
+			return new ExprNode.Less(left, operator, right);
+		case LESS_EQUAL:
+			return new ExprNode.LessEqual(left, operator, right);
+		case BANG_EQUAL:
+			return new ExprNode.Equal(left, operator, right, true);
+		case EQUAL_EQUAL:
+			return new ExprNode.Equal(left, operator, right, false);
+		case MINUS:
+			return new ExprNode.Subtract(left, operator, right);
+		case PLUS:
+			return new ExprNode.Add(left, operator, right);
+		case SLASH:
+			return new ExprNode.Divide(left, operator, right);
+		case STAR:
+			return new ExprNode.Multiply(left, operator, right);
+		}
+		throw new IllegalStateException("Unbekannter Operator " + operator.type);
+	}
+
+	@Override
+	public ExprNode visitCallExpr(Expr.Call expr) {
+		ExprNode callee = compile(expr.callee);
+		ExprNode[] arguments = new ExprNode[expr.arguments.size()];
+		for (int i = 0; i < arguments.length; i++) {
+			arguments[i] = compile(expr.arguments.get(i));
+		}
+
+		// obj.methode(...) and super.methode(...) call the method without binding it first
+		if (callee instanceof ExprNode.Get)
+			return new ExprNode.Invoke(interpreter, (ExprNode.Get) callee, expr.paren, arguments);
+		if (callee instanceof ExprNode.Super)
+			return new ExprNode.SuperInvoke(interpreter, (ExprNode.Super) callee, expr.paren, arguments);
+		return new ExprNode.Call(interpreter, callee, expr.paren, arguments);
+	}
+
+	@Override
+	public ExprNode visitGetExpr(Expr.Get expr) {
+		return new ExprNode.Get(compile(expr.object), expr.name);
+	}
+
+	@Override
+	public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+		return compile(expr.expression);
+	}
+
+	@Override
+	public ExprNode visitLiteralExpr(Expr.Literal expr) {
+		return new ExprNode.Constant(expr.value);
+	}
+
+	@Override
+	public ExprNode visitListLiteralExpr(Expr.ListLiteral expr) {
+		ExprNode[] elements = new ExprNode[expr.elements.size()];
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = compile(expr.elements.get(i));
+		}
+		return new ExprNode.ListLiteral(elements);
+	}
+
+	@Override
+	public ExprNode visitLogicalExpr(Expr.Logical expr) {
+		if (expr.operator.type == TokenType.OR)
+			return new ExprNode.Or(compile(expr.left), compile(expr.right));
+		return new ExprNode.And(compile(expr.left), compile(expr.right));
+	}
+
+	@Override
+	public ExprNode visitSetExpr(Expr.Set expr) {
+		return new ExprNode.Set(compile(expr.object), expr.name, compile(expr.value));
+	}
+
+	@Override
+	public ExprNode visitSuperExpr(Expr.Super expr) {
+		int depth = interpreter.slotOf(expr).depth;
+		return new ExprNode.Super(runtimeDepth(depth), runtimeDepth(depth - 1), expr.method);
+	}
+
+	@Override
+	public ExprNode visitThisExpr(Expr.This expr) {
+		return variable(expr, expr.keyword);
+	}
+
+	@Override
+	public ExprNode visitUnaryExpr(Expr.Unary expr) {
+		ExprNode right = compile(expr.right);
+		if (expr.operator.type == TokenType.MINUS)
+			return new ExprNode.Negate(expr.operator, right);
+		return new ExprNode.Not(right);
+	}
+
+	@Override
+	public ExprNode visitVariableExpr(Expr.Variable expr) {
+		return variable(expr, expr.name);
+	}
+
+	private ExprNode variable(Expr expr, Token name) {
+		Interpreter.Slot slot = interpreter.slotOf(expr);
+		if (slot == null)
+			return new ExprNode.Global(interpreter.globals, name);
+
+		int depth = runtimeDepth(slot.depth);
+		if (depth == 0)
+			return new ExprNode.Local(slot.index);
+		return new ExprNode.EnclosingLocal(depth, slot.index);
+	}
+}
@@ -0,0 +1,67 @@
+package LOX;
+
+// instruction set of the bytecode VM
+// every instruction is one byte, followed by its operands:
+//   u8  = one byte (local slot, upvalue index, argument count)
+//   u16 = two bytes, high byte first (constant index, jump offset, list size)
+final class OpCode {
+	private OpCode() {
+	}
+
+	// constants and literals
+	static final byte CONSTANT = 0;       // u16 constant -> push constant
+	static final byte NIL = 1;            // push nichts
+	static final byte TRUE = 2;           // push wahr
+	static final byte FALSE = 3;          // push falsch
+	static final byte POP = 4;            // discard the top of the stack
+
+	// variables
+	static final byte GET_LOCAL = 5;      // u8 slot
+	static final byte SET_LOCAL = 6;      // u8 slot
+	static final byte GET_GLOBAL = 7;     // u16 symbol id of the name
+	static final byte DEFINE_GLOBAL = 8;  // u16 symbol id of the name
+	static final byte SET_GLOBAL = 9;     // u16 symbol id of the name
+	static final byte GET_UPVALUE = 10;   // u8 upvalue index
+	static final byte SET_UPVALUE = 11;   // u8 upvalue index
+	static final byte CLOSE_UPVALUE = 12; // move the captured local on top of the stack to the heap, then pop it
+
+	// properties
+	static final byte GET_PROPERTY = 13;  // u16 name constant
+	static final byte SET_PROPERTY = 14;  // u16 name constant
+	static final byte GET_SUPER = 15;     // u16 name constant
+
+	// operators
+	static final byte EQUAL = 16;
+	static final byte GREATER = 17;
+	static final byte GREATER_EQUAL = 18;
+	static final byte LESS = 19;
+	static final byte LESS_EQUAL = 20;
+	static final byte ADD = 21;
+	static final byte SUBTRACT = 22;
+	static final byte MULTIPLY = 23;
+	static final byte DIVIDE = 24;
+	static final byte NOT = 25;
+	static final byte NEGATE = 26;
+
+	// statements and control flow
+	static final byte PRINT = 27;
+	static final byte JUMP = 28;          // u16 forward offset
+	static final byte JUMP_IF_FALSE = 29; // u16 forward offset, leaves the condition on the stack
+	static final byte LOOP = 30;          // u16 backward offset
+
+	// functions and calls
+	static final byte CALL = 31;          // u8 argument count
+	static final byte INVOKE = 32;        // u16 method name constant, u8 argument count
+	static final byte SUPER_INVOKE = 33;  // u16 method name constant, u8 argument count
+	static final byte CLOSURE = 34;       // u16 prototype constant, then (u8 isLocal, u8 index) per upvalue
+	static final byte RETURN = 35;
+
+	// classes
+	static final byte CLASS = 36;         // u16 name constant
+	static final byte INHERIT = 37;
+	static final byte METHOD = 38;        // u16 name constant
+
+	// lists: built one element at a time, so a long literal does not pile up on the stack
+	static final byte LIST = 39;          // u16 expected size -> push a new empty list
+	static final byte LIST_APPEND = 40;   // pop a value, add it to the list below it
+}
@@ -0,0 +1,679 @@
+package LOX;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+/*
+ * Rewrites the resolved AST before it runs:
+ * - folds operators on literals, unless they would fail: 1 + "a" is kept, so its error is still
+ *   reported at runtime with its line,
+ * - drops the branch of a wenn and the während loop that a literal condition never runs,
+ * - hoists pure expressions that cannot fail and whose operands do not change while a loop runs
+ *   out of the loop, into a variable declared right before it.
+ * Hoisting adds declarations and a block around the loop, so the result is resolved again.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+	// static types, as far as the optimizer can tell
+	private static final int UNKNOWN = 0;
+	private static final int NUMBER = 1;
+	private static final int STRING = 2;
+	private static final int BOOL = 3;
+	private static final int NIL = 4;
+
+	// a local variable as the analysis found it
+	private static final class Declaration {
+		final int id;
+		final boolean isVar; // declared by var, not a parameter, function or class
+		final Expr initializer; // null: starts as nichts
+		final Set<Stmt.While> loops; // the loops it is declared in
+		boolean assigned = false; // assigned anywhere after its declaration
+
+		Declaration(int id, boolean isVar, Expr initializer, Set<Stmt.While> loops) {
+			this.id = id;
+			this.isVar = isVar;
+			this.initializer = initializer;
+			this.loops = loops;
+		}
+	}
+
+	// a loop being optimized and the variables hoisted out of it
+	private final class Loop {
+		final Stmt.While statement; // as the analysis saw it
+		final List<Stmt> variables = new ArrayList<>();
+		final Map<String, Token> hoisted = new HashMap<>(); // by invariantKey: the same expression is hoisted once
+
+		Loop(Stmt.While statement) {
+			this.statement = statement;
+		}
+
+		Expr hoist(Expr value, String key) {
+			Token name = hoisted.get(key);
+			if (name == null) {
+				// '#' cannot start an identifier, so the name cannot clash with one from the script
+				name = new Token(TokenType.IDENTIFIER, "#invariant" + nextId++, null, 0);
+				hoisted.put(key, name);
+				variables.add(new Stmt.Var(name, value));
+			}
+			return new Expr.Variable(name);
+		}
+	}
+
+	private final Map<Expr.Variable, Declaration> declarations = new IdentityHashMap<>();
+	private Stack<Loop> loops = new Stack<>(); // the loops of the function being optimized, innermost last
+	private int nextId = 0;
+
+	List<Stmt> optimize(List<Stmt> statements) {
+		new Analysis().resolve(statements);
+		return optimizeAll(statements);
+	}
+
+	// Analysis: which variable each name refers to, and which variables are ever assigned
+
+	private final class Analysis implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+		private final Stack<Map<String, Declaration>> scopes = new Stack<>();
+		private final Stack<Stmt.While> enclosingLoops = new Stack<>();
+
+		void resolve(List<Stmt> statements) {
+			for (Stmt statement : statements) {
+				statement.accept(this);
+			}
+		}
+
+		private void resolve(Expr expr) {
+			expr.accept(this);
+		}
+
+		private void declare(Token name, boolean isVar, Expr initializer) {
+			if (scopes.isEmpty())
+				return; // globals can change at any call, they are never invariant
+			Set<Stmt.While> in = Collections.newSetFromMap(new IdentityHashMap<>());
+			in.addAll(enclosingLoops);
+			scopes.peek().put(name.lexeme(), new Declaration(nextId++, isVar, initializer, in));
+		}
+
+		private Declaration lookup(Token name) {
+			for (int i = scopes.size() - 1; i >= 0; i--) {
+				Declaration declaration = scopes.get(i).get(name.lexeme());
+				if (declaration != null)
+					return declaration;
+			}
+			return null;
+		}
+
+		private void function(Stmt.Function function) {
+			scopes.push(new HashMap<>());
+			for (Token param : function.params) {
+				declare(param, false, null);
+			}
+			resolve(function.body);
+			scopes.pop();
+		}
+
+		@Override
+		public Void visitBlockStmt(Stmt.Block stmt) {
+			scopes.push(new HashMap<>());
+			resolve(stmt.statements);
+			scopes.pop();
+			return null;
+		}
+
+		@Override
+		public Void visitClassStmt(Stmt.Class stmt) {
+			declare(stmt.name, false, null);
+			if (stmt.superclass != null)
+				resolve(stmt.superclass);
+			for (Stmt.Function method : stmt.methods) {
+				function(method);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStmt(Stmt.Expression stmt) {
+			resolve(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionStmt(Stmt.Function stmt) {
+			declare(stmt.name, false, null);
+			function(stmt);
+			return null;
+		}
+
+		@Override
+		public Void visitIfStmt(Stmt.If stmt) {
+			resolve(stmt.condition);
+			stmt.thenBranch.accept(this);
+			if (stmt.elseBranch != null)
+				stmt.elseBranch.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitPrintStmt(Stmt.Print stmt) {
+			resolve(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitReturnStmt(Stmt.Return stmt) {
+			if (stmt.value != null)
+				resolve(stmt.value);
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Stmt.Var stmt) {
+			if (stmt.initializer != null)
+				resolve(stmt.initializer);
+			declare(stmt.name, true, stmt.initializer);
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStmt(Stmt.While stmt) {
+			enclosingLoops.push(stmt);
+			resolve(stmt.condition);
+			stmt.body.accept(this);
+			enclosingLoops.pop();
+			return null;
+		}
+
+		@Override
+		public Void visitAssignExpr(Expr.Assign expr) {
+			resolve(expr.value);
+			Declaration declaration = lookup(expr.name);
+			if (declaration != null)
+				declaration.assigned = true;
+			return null;
+		}
+
+		@Override
+		public Void visitBinaryExpr(Expr.Binary expr) {
+			resolve(expr.left);
+			resolve(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitCallExpr(Expr.Call expr) {
+			resolve(expr.callee);
+			for (Expr argument : expr.arguments) {
+				resolve(argument);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitGetExpr(Expr.Get expr) {
+			resolve(expr.object);
+			return null;
+		}
+
+		@Override
+		public Void visitGroupingExpr(Expr.Grouping expr) {
+			resolve(expr.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitLiteralExpr(Expr.Literal expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+			for (Expr element : expr.elements) {
+				resolve(element);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitLogicalExpr(Expr.Logical expr) {
+			resolve(expr.left);
+			resolve(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitSetExpr(Expr.Set expr) {
+			resolve(expr.object);
+			resolve(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitSuperExpr(Expr.Super expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitThisExpr(Expr.This expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryExpr(Expr.Unary expr) {
+			resolve(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpr(Expr.Variable expr) {
+			Declaration declaration = lookup(expr.name);
+			if (declaration != null)
+				declarations.put(expr, declaration);
+			return null;
+		}
+	}
+
+	// Invariants
+
+	private int typeOf(Expr expr) {
+		if (expr instanceof Expr.Literal) {
+			Object value = ((Expr.Literal) expr).value;
+			if (value instanceof Double)
+				return NUMBER;
+			if (value instanceof String)
+				return STRING;
+			return value instanceof Boolean ? BOOL : NIL;
+		}
+		if (expr instanceof Expr.Grouping)
+			return typeOf(((Expr.Grouping) expr).expression);
+		if (expr instanceof Expr.Variable) {
+			// a variable that is never assigned keeps the type of its initializer
+			Declaration declaration = declarations.get(expr);
+			if (declaration == null || declaration.assigned || !declaration.isVar)
+				return UNKNOWN;
+			return declaration.initializer == null ? NIL : typeOf(declaration.initializer);
+		}
+		if (expr instanceof Expr.Unary) {
+			Expr.Unary unary = (Expr.Unary) expr;
+			if (unary.operator.type == TokenType.BANG)
+				return BOOL;
+			return typeOf(unary.right) == NUMBER ? NUMBER : UNKNOWN;
+		}
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			int left = typeOf(binary.left);
+			int right = typeOf(binary.right);
+			switch (binary.operator.type) {
+			case EQUAL_EQUAL:
+			case BANG_EQUAL:
+				return BOOL;
+			case PLUS:
+				return left == right && (left == NUMBER || left == STRING) ? left : UNKNOWN;
+			case MINUS:
+			case STAR:
+			case SLASH:
+				return left == NUMBER && right == NUMBER ? NUMBER : UNKNOWN;
+			default:
+				return left == NUMBER && right == NUMBER ? BOOL : UNKNOWN;
+			}
+		}
+		if (expr instanceof Expr.Logical) {
+			Expr.Logical logical = (Expr.Logical) expr;
+			int left = typeOf(logical.left);
+			return left == typeOf(logical.right) ? left : UNKNOWN;
+		}
+		return UNKNOWN;
+	}
+
+	// a key that is equal for equal expressions, if expr cannot fail, has no effects and has the
+	// same value on every iteration of loop; null otherwise
+	private String invariantKey(Expr expr, Stmt.While loop) {
+		if (expr instanceof Expr.Literal) {
+			Object value = ((Expr.Literal) expr).value;
+			if (value instanceof String)
+				return "S" + ((String) value).length() + ":" + value;
+			return String.valueOf(value);
+		}
+		if (expr instanceof Expr.Grouping)
+			return invariantKey(((Expr.Grouping) expr).expression, loop);
+		if (expr instanceof Expr.Variable) {
+			Declaration declaration = declarations.get(expr);
+			if (declaration == null || declaration.assigned || declaration.loops.contains(loop))
+				return null;
+			return "V" + declaration.id;
+		}
+		if (expr instanceof Expr.Unary) {
+			Expr.Unary unary = (Expr.Unary) expr;
+			String right = invariantKey(unary.right, loop);
+			if (right == null || typeOf(unary) == UNKNOWN)
+				return null;
+			return "(" + unary.operator.lexeme() + " " + right + ")";
+		}
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			String left = invariantKey(binary.left, loop);
+			String right = left == null ? null : invariantKey(binary.right, loop);
+			// an operator whose type is known cannot fail on its operands
+			if (right == null || typeOf(binary) == UNKNOWN)
+				return null;
+			return "(" + binary.operator.lexeme() + " " + left + " " + right + ")";
+		}
+		if (expr instanceof Expr.Logical) {
+			Expr.Logical logical = (Expr.Logical) expr;
+			String left = invariantKey(logical.left, loop);
+			String right = left == null ? null : invariantKey(logical.right, loop);
+			if (right == null)
+				return null;
+			return "(" + logical.operator.lexeme() + " " + left + " " + right + ")";
+		}
+		return null;
+	}
+
+	// only expressions that compute something are worth a variable
+	private static boolean hasOperator(Expr expr) {
+		if (expr instanceof Expr.Binary)
+			return true;
+		if (expr instanceof Expr.Grouping)
+			return hasOperator(((Expr.Grouping) expr).expression);
+		if (expr instanceof Expr.Unary)
+			return hasOperator(((Expr.Unary) expr).right);
+		if (expr instanceof Expr.Logical)
+			return hasOperator(((Expr.Logical) expr).left) || hasOperator(((Expr.Logical) expr).right);
+		return false;
+	}
+
+	private Expr optimize(Expr expr) {
+		if (!loops.isEmpty() && hasOperator(expr)) {
+			// folded as a whole first: hoisted out of the outermost loop it does not change in
+			Stack<Loop> enclosing = loops;
+			loops = new Stack<>();
+			Expr folded = expr.accept(this);
+			loops = enclosing;
+			if (!hasOperator(folded))
+				return folded;
+			for (Loop loop : loops) {
+				String key = invariantKey(folded, loop.statement);
+				if (key != null)
+					return loop.hoist(folded, key);
+			}
+		}
+		// otherwise its operands may still be hoisted
+		return expr.accept(this);
+	}
+
+	// Folding
+
+	private static boolean isLiteral(Expr expr) {
+		return expr instanceof Expr.Literal;
+	}
+
+	private static Object valueOf(Expr expr) {
+		return ((Expr.Literal) expr).value;
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		Expr value = optimize(expr.value);
+		return value == expr.value ? expr : new Expr.Assign(expr.name, value);
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+		if (isLiteral(left) && isLiteral(right)) {
+			Object a = valueOf(left);
+			Object b = valueOf(right);
+			switch (expr.operator.type) {
+			case EQUAL_EQUAL:
+				return new Expr.Literal(Interpreter.isEqual(a, b));
+			case BANG_EQUAL:
+				return new Expr.Literal(!Interpreter.isEqual(a, b));
+			case PLUS:
+				if (a instanceof String && b instanceof String)
+					return new Expr.Literal((String) a + (String) b);
+				break;
+			default:
+				break;
+			}
+			// everything else only on two numbers; the rest fails at runtime as before
+			if (a instanceof Double && b instanceof Double) {
+				double x = (double) a;
+				double y = (double) b;
+				switch (expr.operator.type) {
+				case PLUS:
+					return new Expr.Literal(x + y);
+				case MINUS:
+					return new Expr.Literal(x - y);
+				case STAR:
+					return new Expr.Literal(x * y);
+				case SLASH:
+					return new Expr.Literal(x / y);
+				case GREATER:
+					return new Expr.Literal(x > y);
+				case GREATER_EQUAL:
+					return new Expr.Literal(x >= y);
+				case LESS:
+					return new Expr.Literal(x < y);
+				case LESS_EQUAL:
+					return new Expr.Literal(x <= y);
+				default:
+					break;
+				}
+			}
+		}
+		if (left == expr.left && right == expr.right)
+			return expr;
+		return new Expr.Binary(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitCallExpr(Expr.Call expr) {
+		Expr callee = optimize(expr.callee);
+		List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+		boolean changed = callee != expr.callee;
+		for (Expr argument : expr.arguments) {
+			Expr optimized = optimize(argument);
+			changed |= optimized != argument;
+			arguments.add(optimized);
+		}
+		return changed ? new Expr.Call(callee, expr.paren, arguments) : expr;
+	}
+
+	@Override
+	public Expr visitGetExpr(Expr.Get expr) {
+		Expr object = optimize(expr.object);
+		return object == expr.object ? expr : new Expr.Get(object, expr.name);
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		Expr inner = optimize(expr.expression);
+		if (isLiteral(inner))
+			return inner;
+		return inner == expr.expression ? expr : new Expr.Grouping(inner);
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		return expr;
+	}
+
+	// a new list on every evaluation, so it is never hoisted itself, only its elements may be
+	@Override
+	public Expr visitListLiteralExpr(Expr.ListLiteral expr) {
+		List<Expr> elements = new ArrayList<>(expr.elements.size());
+		boolean changed = false;
+		for (Expr element : expr.elements) {
+			Expr optimized = optimize(element);
+			changed |= optimized != element;
+			elements.add(optimized);
+		}
+		return changed ? new Expr.ListLiteral(expr.bracket, elements) : expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+		if (isLiteral(left)) {
+			// the value of und / oder is one of its operands
+			boolean truthy = Interpreter.isTruthy(valueOf(left));
+			if (expr.operator.type == TokenType.OR)
+				return truthy ? left : right;
+			return truthy ? right : left;
+		}
+		if (left == expr.left && right == expr.right)
+			return expr;
+		return new Expr.Logical(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitSetExpr(Expr.Set expr) {
+		Expr object = optimize(expr.object);
+		Expr value = optimize(expr.value);
+		if (object == expr.object && value == expr.value)
+			return expr;
+		return new Expr.Set(object, expr.name, value);
+	}
+
+	@Override
+	public Expr visitSuperExpr(Expr.Super expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitThisExpr(Expr.This expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		Expr right = optimize(expr.right);
+		if (isLiteral(right)) {
+			Object value = valueOf(right);
+			if (expr.operator.type == TokenType.BANG)
+				return new Expr.Literal(!Interpreter.isTruthy(value));
+			if (value instanceof Double)
+				return new Expr.Literal(-(double) value);
+		}
+		return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+	}
+
+	@Override
+	public Expr visitVariableExpr(Expr.Variable expr) {
+		return expr;
+	}
+
+	// Statements: null means the statement is dropped
+
+	private List<Stmt> optimizeAll(List<Stmt> statements) {
+		List<Stmt> optimized = new ArrayList<>(statements.size());
+		for (Stmt statement : statements) {
+			Stmt result = statement.accept(this);
+			if (result != null)
+				optimized.add(result);
+		}
+		return optimized;
+	}
+
+	// where a statement is required, a dropped one becomes an empty block
+	private Stmt optimizeBranch(Stmt statement) {
+		Stmt result = statement.accept(this);
+		return result == null ? new Stmt.Block(new ArrayList<>()) : result;
+	}
+
+	private Stmt.Function function(Stmt.Function stmt) {
+		// a loop outside the function does not run its body, so nothing is hoisted across it
+		Stack<Loop> enclosing = loops;
+		loops = new Stack<>();
+		List<Stmt> body = optimizeAll(stmt.body);
+		loops = enclosing;
+		return new Stmt.Function(stmt.name, stmt.params, body);
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		return new Stmt.Block(optimizeAll(stmt.statements));
+	}
+
+	@Override
+	public Stmt visitClassStmt(Stmt.Class stmt) {
+		List<Stmt.Function> methods = new ArrayList<>(stmt.methods.size());
+		for (Stmt.Function method : stmt.methods) {
+			methods.add(function(method));
+		}
+		return new Stmt.Class(stmt.name, stmt.superclass, methods);
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		Expr expression = optimize(stmt.expression);
+		if (isLiteral(expression))
+			return null; // computes nothing
+		return expression == stmt.expression ? stmt : new Stmt.Expression(expression);
+	}
+
+	@Override
+	public Stmt visitFunctionStmt(Stmt.Function stmt) {
+		return function(stmt);
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Expr condition = optimize(stmt.condition);
+		if (isLiteral(condition)) {
+			if (Interpreter.isTruthy(valueOf(condition)))
+				return stmt.thenBranch.accept(this);
+			return stmt.elseBranch == null ? null : stmt.elseBranch.accept(this);
+		}
+		Stmt thenBranch = optimizeBranch(stmt.thenBranch);
+		Stmt elseBranch = stmt.elseBranch == null ? null : stmt.elseBranch.accept(this);
+		return new Stmt.If(condition, thenBranch, elseBranch);
+	}
+
+	@Override
+	public Stmt visitPrintStmt(Stmt.Print stmt) {
+		Expr expression = optimize(stmt.expression);
+		return expression == stmt.expression ? stmt : new Stmt.Print(expression);
+	}
+
+	@Override
+	public Stmt visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value == null)
+			return stmt;
+		Expr value = optimize(stmt.value);
+		return value == stmt.value ? stmt : new Stmt.Return(stmt.keyword, value);
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer == null)
+			return stmt;
+		Expr initializer = optimize(stmt.initializer);
+		return initializer == stmt.initializer ? stmt : new Stmt.Var(stmt.name, initializer);
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		Loop loop = new Loop(stmt);
+		loops.push(loop);
+		Expr condition = optimize(stmt.condition);
+		if (isLiteral(condition) && !Interpreter.isTruthy(valueOf(condition))) {
+			loops.pop();
+			return null;
+		}
+		Stmt body = optimizeBranch(stmt.body);
+		loops.pop();
+
+		Stmt.While optimized = new Stmt.While(condition, body);
+		if (loop.variables.isEmpty())
+			return optimized;
+		// { var #invariant0 = ...; während (...) ... }
+		List<Stmt> block = new ArrayList<>(loop.variables);
+		block.add(optimized);
+		return new Stmt.Block(block);
+	}
+}
@@ -0,0 +1,89 @@
+package LOX;
+
+import static LOX.TokenType.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Parses a long token stream on the common ForkJoin pool, as runs of top-level declarations
+// that separate Parsers take on at once; the statements are put together in source order.
+// A run starts right after a ';' or '}' outside any brackets, so at every top-level funktion
+// and klasse and at the other statements too, though never at a sonst. No declaration looks
+// at a token past its own end, except for a sonst, so a run that parses without error parses
+// exactly as it would as part of the whole. If any run has an error, the result is dropped
+// and the caller parses the stream again on its own, which reports the errors as it always has.
+final class ParallelParser {
+	private static final int MIN_RUN = 1 << 14; // fewer tokens are not worth a task
+
+	private final TokenStream tokens;
+
+	ParallelParser(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	// whether a stream this long is parsed in parallel: only with two runs and two threads
+	static boolean isWorthIt(int size) {
+		return size >= 2 * MIN_RUN && ForkJoinPool.getCommonPoolParallelism() > 1;
+	}
+
+	// the statements, or null if there is an error
+	List<Stmt> parse() {
+		int[] starts = runStarts(); // run i is starts[i]..starts[i + 1]
+		int count = starts.length - 1;
+
+		Parser[] parsers = new Parser[count];
+		List<List<Stmt>> runs = IntStream.range(0, count).parallel().mapToObj(i -> {
+			parsers[i] = new Parser(tokens, starts[i], starts[i + 1]);
+			return parsers[i].parse();
+		}).collect(Collectors.toList());
+
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			if (parsers[i].hadError())
+				return null;
+			size += runs.get(i).size();
+		}
+		List<Stmt> statements = new ArrayList<>(size);
+		for (List<Stmt> run : runs)
+			statements.addAll(run);
+		return statements;
+	}
+
+	// where the runs start, and last the index of EOF; about four runs per thread
+	private int[] runStarts() {
+		int size = tokens.size() - 1;
+		int length = Math.max(MIN_RUN, size / (4 * ForkJoinPool.getCommonPoolParallelism()));
+		int[] starts = new int[size / length + 2];
+		int count = 0;
+		starts[count++] = 0;
+		int next = length; // the earliest start of the next run
+		int depth = 0;
+		for (int i = 0; i + 1 < size; i++) {
+			TokenType type = tokens.type(i);
+			switch (type) {
+			case LEFT_PAREN:
+			case LEFT_BRACE:
+			case LEFT_BRACKET:
+				depth++;
+				break;
+			case RIGHT_PAREN:
+			case RIGHT_BRACE:
+			case RIGHT_BRACKET:
+				depth--;
+				break;
+			default:
+				break;
+			}
+			if (i + 1 >= next && depth == 0 && (type == SEMICOLON || type == RIGHT_BRACE)
+					&& tokens.type(i + 1) != ELSE) {
+				starts[count++] = i + 1;
+				next = i + 1 + length;
+			}
+		}
+		starts[count++] = size;
+		return Arrays.copyOf(starts, count);
+	}
+}
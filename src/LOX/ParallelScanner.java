@@ -0,0 +1,142 @@
+package LOX;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Scans a large source in chunks on the common ForkJoin pool. Chunks are cut just after a
+// newline, and since a comment ends at the newline, the only token that can run on into the
+// next chunk is a string. So a first parallel pass works out, for each chunk, how many
+// newlines it has and whether it ends inside a string, both for starting outside one and for
+// starting inside one; a walk over those from the front gives every chunk its true first
+// line and whether it starts inside a string. Then the chunks are scanned in parallel, a
+// chunk that starts inside a string from after its closing quote: the string belongs to the
+// chunk it begins in, whose scanner reads on to its end. The chunks' tokens and errors are
+// put together in order, so both are the same as from one Scanner.
+final class ParallelScanner {
+	private static final int MIN_CHUNK = 1 << 20; // smaller chunks are not worth a task
+
+	// where the first pass is, as far as the chunk boundaries care
+	private static final int CODE = 0;
+	private static final int STRING = 1;
+	private static final int COMMENT = 2;
+
+	private final ByteBuffer source;
+	private final int length;
+
+	ParallelScanner(ByteBuffer source) {
+		this.source = source;
+		this.length = source.limit();
+	}
+
+	// whether a source this long is scanned in parallel: only with two chunks and two threads
+	static boolean isWorthIt(int length) {
+		return length >= 2 * MIN_CHUNK && ForkJoinPool.getCommonPoolParallelism() > 1;
+	}
+
+	TokenStream scanTokens() {
+		int[] starts = chunkStarts(); // chunk i is starts[i]..starts[i + 1]
+		int count = starts.length - 1;
+
+		int[] newlines = new int[count];
+		boolean[] endsInStringFromOutside = new boolean[count];
+		boolean[] endsInStringFromInside = new boolean[count];
+		IntStream.range(0, count).parallel().forEach(i -> {
+			// one pass follows both ways the chunk could start
+			int fromOutside = CODE;
+			int fromInside = STRING;
+			int lines = 0;
+			for (int at = starts[i]; at < starts[i + 1]; at++) {
+				byte c = source.get(at);
+				if (c == '\n')
+					lines++;
+				fromOutside = next(fromOutside, c, at);
+				fromInside = next(fromInside, c, at);
+			}
+			newlines[i] = lines;
+			endsInStringFromOutside[i] = fromOutside == STRING;
+			endsInStringFromInside[i] = fromInside == STRING;
+		});
+
+		int[] firstLines = new int[count];
+		boolean[] startsInString = new boolean[count];
+		int line = 1;
+		boolean inString = false;
+		for (int i = 0; i < count; i++) {
+			firstLines[i] = line;
+			startsInString[i] = inString;
+			line += newlines[i];
+			inString = inString ? endsInStringFromInside[i] : endsInStringFromOutside[i];
+		}
+
+		Scanner[] scanners = new Scanner[count];
+		TokenStream[] parts = new TokenStream[count];
+		IntStream.range(0, count).parallel().forEach(i -> {
+			int from = starts[i];
+			int end = starts[i + 1];
+			int first = firstLines[i];
+			if (startsInString[i]) {
+				// skip the rest of the string, which an earlier chunk has scanned
+				while (from < end && source.get(from) != '"') {
+					if (source.get(from) == '\n')
+						first++;
+					from++;
+				}
+				from = Math.min(from + 1, end);
+			}
+			scanners[i] = new Scanner(source, from, end, first);
+			parts[i] = scanners[i].scanChunk();
+		});
+
+		// sized from what the chunks actually hold, plus EOF, so the copy never grows
+		int size = 1;
+		for (TokenStream part : parts)
+			size += part.size();
+		TokenStream tokens = new TokenStream(source, size);
+		for (int i = 0; i < count; i++) {
+			tokens.append(parts[i]);
+			parts[i] = null; // no longer needed, while the rest are copied
+			scanners[i].reportErrors();
+		}
+		tokens.add(TokenType.EOF, length, 0, line, -1);
+		return tokens;
+	}
+
+	// where the chunks start, each after a newline, and last the end of the source; about four
+	// chunks per thread, so one slow chunk does not hold up the rest
+	private int[] chunkStarts() {
+		int size = Math.max(MIN_CHUNK, length / (4 * ForkJoinPool.getCommonPoolParallelism()));
+		int[] starts = new int[length / size + 2];
+		int count = 0;
+		starts[count++] = 0;
+		int at = size;
+		while (at < length) {
+			while (at < length && source.get(at - 1) != '\n')
+				at++;
+			if (at == length)
+				break;
+			starts[count++] = at;
+			at += size;
+		}
+		starts[count++] = length;
+		return Arrays.copyOf(starts, count);
+	}
+
+	// the state after the byte c at the given index: follows the Scanner as far as quotes and
+	// comments go, which is all that decides whether a chunk ends inside a string
+	private int next(int state, byte c, int at) {
+		switch (state) {
+		case STRING:
+			return c == '"' ? CODE : STRING;
+		case COMMENT:
+			return c == '\n' ? CODE : COMMENT;
+		default:
+			if (c == '"')
+				return STRING;
+			if (c == '/' && at + 1 < length && source.get(at + 1) == '/')
+				return COMMENT;
+			return CODE;
+		}
+	}
+}
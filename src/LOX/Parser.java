@@ -5,22 +5,46 @@ import java.util.ArrayList;
 import static LOX.TokenType.*;
 import java.util.Arrays;
 
-// Recursive Descent Parser: converts a list of tokens into an AST (Abstract Syntax Tree)
+// Recursive Descent Parser: converts a stream of tokens into an AST (Abstract Syntax Tree).
+// It reads token types straight from the TokenStream; a Token object is made only for a token
+// the tree keeps (previous()) or an error names (peek()).
 class Parser {
 	// signal parse errors without crashing the program
 	private static class ParseError extends RuntimeException {
 	}
 
-	private final List<Token> tokens;
-	private int current = 0; // current token being processed
+	private final TokenStream tokens;
+	private int current; // current token being processed
+	private final int end; // the token here counts as the end of the stream
+	private final boolean reportErrors; // false: errors are only noted, in hadError
+	private boolean hadError = false;
 
 	// constructor
-	Parser(List<Token> tokens) {
+	Parser(TokenStream tokens) {
+		this(tokens, 0, tokens.size() - 1, true);
+	}
+
+	// a parser for the declarations from..to, for ParallelParser; it does not report errors
+	Parser(TokenStream tokens, int from, int to) {
+		this(tokens, from, to, false);
+	}
+
+	private Parser(TokenStream tokens, int from, int to, boolean reportErrors) {
 		this.tokens = tokens;
+		this.current = from;
+		this.end = to;
+		this.reportErrors = reportErrors;
 	}
 
 	// entry point
 	List<Stmt> parse() {
+		if (reportErrors && ParallelParser.isWorthIt(tokens.size())) {
+			// null if some part has an error: then the errors are found and reported below
+			List<Stmt> statements = new ParallelParser(tokens).parse();
+			if (statements != null)
+				return statements;
+		}
+
 		List<Stmt> statements = new ArrayList<>();
 		while (!isAtEnd()) {
 			statements.add(declaration());
@@ -29,6 +53,11 @@ class Parser {
 		return statements;
 	}
 
+	// whether there was an error, reported or not
+	boolean hadError() {
+		return hadError;
+	}
+
 	// Recursive Descent Functions:
 
 	// declaration -> funDecl | varDecl | statement | classDecl;
@@ -51,7 +80,8 @@ class Parser {
 	// classDecl -> "klasse" IDENTIFIER ( "<" IDENTIFIER )? "{" function* "}"
 	private Stmt classDeclaration() {
 		// Identifier
-		Token name = consume(IDENTIFIER, "Klassenname erwartet.");
+		consume(IDENTIFIER, "Klassenname erwartet.");
+		Token name = previous();
 
 		Expr.Variable superclass = null;
 		if (match(LESS)) {
@@ -77,7 +107,8 @@ class Parser {
 	// funDecl → "funktion" function
 	private Stmt.Function function(String kind) {
 		// function → IDENTIFIER "(" parameters? ")" block
-		Token name = consume(IDENTIFIER, kind + "sname erwartet.");
+		consume(IDENTIFIER, kind + "sname erwartet.");
+		Token name = previous();
 		consume(LEFT_PAREN, "'(' nach " + kind + "sname erwartet.");
 
 		// parameters?
@@ -87,7 +118,8 @@ class Parser {
 				if (parameters.size() >= 255) {
 					error(peek(), "Kann nicht mehr als 255 Parameter haben.");
 				}
-				parameters.add(consume(IDENTIFIER, "Parametername erwartet."));
+				consume(IDENTIFIER, "Parametername erwartet.");
+				parameters.add(previous());
 			} while (match(COMMA));
 		}
 
@@ -102,7 +134,8 @@ class Parser {
 
 	// varDeclaration -> "var" IDENTIFIER ( "=" expression )? ";"
 	private Stmt varDeclaration() {
-		Token name = consume(IDENTIFIER, "Variablenname erwartet.");
+		consume(IDENTIFIER, "Variablenname erwartet.");
+		Token name = previous();
 
 		Expr initializer = null;
 		if (match(EQUAL)) {
@@ -378,7 +411,8 @@ class Parser {
 				expr = finishCall(expr);
 			} else if (match(DOT)) {
 				// it is a class field
-				Token name = consume(IDENTIFIER, "Eigenschaftsname nach '.' erwartet.");
+				consume(IDENTIFIER, "Eigenschaftsname nach '.' erwartet.");
+				Token name = previous();
 				expr = new Expr.Get(expr, name);
 			} else {
 				// no more function calls
@@ -403,7 +437,8 @@ class Parser {
 			} while (match(COMMA));
 		}
 
-		Token paren = consume(RIGHT_PAREN, "')' nach Argumenten erwartet.");
+		consume(RIGHT_PAREN, "')' nach Argumenten erwartet.");
+		Token paren = previous();
 
 		// return a Call expression with the callee, the closing parenthesis, and the
 		// argument list
@@ -420,12 +455,13 @@ class Parser {
 			return new Expr.Literal(null);
 
 		if (match(NUMBER, STRING)) {
-			return new Expr.Literal(previous().literal);
+			return new Expr.Literal(tokens.literal(current - 1));
 		}
 		if (match(SUPER)) {
 			Token keyword = previous();
 			consume(DOT, "'.' nach 'super' erwartet.");
-			Token method = consume(IDENTIFIER, "Name der Oberklassenmethode erwartet.");
+			consume(IDENTIFIER, "Name der Oberklassenmethode erwartet.");
+			Token method = previous();
 			return new Expr.Super(keyword, method);
 		}
 		if (match(THIS))
@@ -439,10 +475,29 @@ class Parser {
 			consume(RIGHT_PAREN, "')' nach Ausdruck erwartet.");
 			return new Expr.Grouping(expr);
 		}
+		if (match(LEFT_BRACKET)) {
+			return listLiteral(previous());
+		}
 
 		throw error(peek(), "Ausdruck erwartet.");
 	}
 
+	// [a, b, ...]: the elements of a new list
+	private Expr listLiteral(Token bracket) {
+		List<Expr> elements = new ArrayList<>();
+		if (!check(RIGHT_BRACKET)) {
+			do {
+				if (elements.size() >= 65535) {
+					error(peek(), "Kann nicht mehr als 65535 Elemente haben.");
+				}
+				elements.add(expression());
+			} while (match(COMMA));
+		}
+
+		consume(RIGHT_BRACKET, "']' nach Elementen erwartet.");
+		return new Expr.ListLiteral(bracket, elements);
+	}
+
 	// Utility methods for matching and advancing tokens
 
 	// checks if the current token matches any of the given types; if it does, it is
@@ -461,42 +516,45 @@ class Parser {
 	private boolean check(TokenType type) {
 		if (isAtEnd())
 			return false;
-		return peek().type == type;
+		return tokens.type(current) == type;
 	}
 
-	// moves to the next token and returns the previous one
-	private Token advance() {
+	// moves to the next token
+	private void advance() {
 		if (!isAtEnd())
 			current++;
-		return previous();
 	}
 
-	// returns true if we've reached the end of the token list
+	// returns true if we've reached the end of the token stream, or of this parser's part
 	private boolean isAtEnd() {
-		return peek().type == EOF;
+		return current >= end;
 	}
 
 	// returns the current token without consuming it
 	private Token peek() {
-		return tokens.get(current);
+		return tokens.token(current);
 	}
 
 	// returns the most recently consumed token
 	private Token previous() {
-		return tokens.get(current - 1);
+		return tokens.token(current - 1);
 	}
 
 	// ensures the current token matches the expected type. If so, it advances.
 	// Otherwise, throws an error.
-	private Token consume(TokenType type, String message) {
-		if (check(type))
-			return advance();
+	private void consume(TokenType type, String message) {
+		if (check(type)) {
+			advance();
+			return;
+		}
 		throw error(peek(), message);
 	}
 
 	// error() reports a parsing error and returns a ParseError exception
 	private ParseError error(Token token, String message) {
-		Lox.error(token.line, message);
+		if (reportErrors)
+			Lox.error(token.line, message);
+		hadError = true;
 		return new ParseError();
 	}
 
@@ -506,9 +564,9 @@ class Parser {
 		advance();
 
 		while (!isAtEnd()) {
-			if (previous().type == SEMICOLON)
+			if (tokens.type(current - 1) == SEMICOLON)
 				return;
-			switch (peek().type) {
+			switch (tokens.type(current)) {
 			case CLASS:
 			case FUN:
 			case VAR:
@@ -0,0 +1,21 @@
+package LOX;
+
+// a compiled function: its bytecode and what the VM needs to build a closure around it
+class Prototype {
+	final String name; // null for the top level script
+	int arity = 0;
+	int upvalueCount = 0;
+	int maxStackSize = 1; // the most slots its frame ever uses: locals and temporaries
+	final Chunk chunk = new Chunk();
+
+	Prototype(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String toString() {
+		if (name == null)
+			return "<script>";
+		return "<fn " + name + ">";
+	}
+}
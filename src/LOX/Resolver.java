@@ -16,8 +16,8 @@ import java.util.Stack;
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	private final Interpreter interpreter;
 
-	// Stack of variableName : false (if only initialized) true (if fully defined)
-	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+	// Stack of variableName : its slot in the scope's frame and whether it is fully defined
+	private final Stack<Map<String, Local>> scopes = new Stack<>();
 	private FunctionType currentFunction = FunctionType.NONE;
 
 	private enum FunctionType {
@@ -30,6 +30,17 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	private ClassType currentClass = ClassType.NONE;
 
+	// a local variable: slots are numbered in declaration order, which is also the order
+	// the interpreter defines them in at runtime
+	private static class Local {
+		final int slot;
+		boolean defined = false; // false while only declared, true once its initializer has been resolved
+
+		Local(int slot) {
+			this.slot = slot;
+		}
+	}
+
 	// constructor
 	Resolver(Interpreter interpreter) {
 		this.interpreter = interpreter;
@@ -46,7 +57,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	// add the new scope to the stack
 	private void beginScope() {
-		scopes.push(new HashMap<String, Boolean>());
+		scopes.push(new HashMap<String, Local>());
 	}
 
 	// resolves each statement one by one
@@ -91,25 +102,34 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		if (scopes.isEmpty())
 			return;
 
-		Map<String, Boolean> scope = scopes.peek();
-		if (scope.containsKey(name.lexeme)) {
+		Map<String, Local> scope = scopes.peek();
+		if (scope.containsKey(name.lexeme())) {
 			Lox.error(name, "Bereits eine Variable mit diesem Namen in diesem Gültigkeitsbereich.");
 		}
-		scope.put(name.lexeme, false);
+		scope.put(name.lexeme(), new Local(scope.size()));
 	}
 
 	// mark as fully defined and usable
 	private void define(Token name) {
 		if (scopes.isEmpty())
 			return;
-		scopes.peek().put(name.lexeme, true);
+		scopes.peek().get(name.lexeme()).defined = true;
+	}
+
+	// names the interpreter binds itself: "super" in its own scope, "dies" in the method's scope,
+	// both in slot 0
+	private void definePredeclared(String name) {
+		Local local = new Local(scopes.peek().size());
+		local.defined = true;
+		scopes.peek().put(name, local);
 	}
 
 	// checks if the variable is being accessed before being defined
 	// if it is defined, how far up the scope stack is it declared
 	@Override
 	public Void visitVariableExpr(Expr.Variable expr) {
-		if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+		if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.lexeme())
+				&& !scopes.peek().get(expr.name.lexeme()).defined) {
 			Lox.error(expr.name, "Kann lokale Variable in ihrer eigenen Initialisierung nicht lesen.");
 		}
 
@@ -117,10 +137,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	// how far up the scope stack the variable lives, and which slot it has there
 	private void resolveLocal(Expr expr, Token name) {
 		for (int i = scopes.size() - 1; i >= 0; i--) {
-			if (scopes.get(i).containsKey(name.lexeme)) {
-				interpreter.resolve(expr, scopes.size() - 1 - i);
+			Local local = scopes.get(i).get(name.lexeme());
+			if (local != null) {
+				interpreter.resolve(expr, scopes.size() - 1 - i, local.slot);
 				return;
 			}
 		}
@@ -150,6 +172,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		currentFunction = type;
 		// new scope for the function
 		beginScope();
+		// a method gets its receiver in slot 0 of its own frame, before the parameters
+		if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+			definePredeclared("dies");
+		}
 		// add all parameters to the scope before resolving the body
 		for (Token param : function.params) {
 			declare(param);
@@ -198,6 +224,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			}
 
 			resolve(stmt.value);
+			// zurückgeben f(x): nothing is left to do in this call after f, so f can take over its frame
+			if (stmt.value instanceof Expr.Call && currentFunction != FunctionType.NONE)
+				interpreter.tailCall(stmt);
 		}
 
 		return null;
@@ -210,7 +239,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		declare(stmt.name);
 		define(stmt.name);
 
-		if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
+		if (stmt.superclass != null && stmt.name.lexeme().equals(stmt.superclass.name.lexeme())) {
 			Lox.error(stmt.superclass.name, "Eine Klasse kann nicht von sich selbst erben.");
 		}
 
@@ -221,22 +250,17 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 		if (stmt.superclass != null) {
 			beginScope();
-			scopes.peek().put("super", true);
+			definePredeclared("super");
 		}
 
-		beginScope();
-		scopes.peek().put("dies", true);
-
 		for (Stmt.Function method : stmt.methods) {
 			FunctionType declaration = FunctionType.METHOD;
-			if (method.name.lexeme.equals("init")) {
+			if (method.name.lexeme().equals("init")) {
 				declaration = FunctionType.INITIALIZER;
 			}
 			resolveFunction(method, declaration);
 		}
 
-		endScope();
-
 		if (stmt.superclass != null)
 			endScope();
 		currentClass = enclosingClass;
@@ -315,6 +339,14 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitListLiteralExpr(Expr.ListLiteral expr) {
+		for (Expr element : expr.elements) {
+			resolve(element);
+		}
+		return null;
+	}
+
 	@Override
 	public Void visitLogicalExpr(Expr.Logical expr) {
 		resolve(expr.left);
@@ -0,0 +1,90 @@
+package LOX;
+
+import java.util.ArrayDeque;
+
+// A string made by + that has not been needed as a whole yet: it only remembers its two
+// parts, so building a long string piece by piece does not copy it again on every +.
+// It is flattened into one String, once, when it is printed, compared or stringified:
+//   ((("a" + "b") + "c") + "d")  -- toString() -->  "abcd"
+// Lox strings are therefore either a String or a Rope; isString and concat cover both.
+public final class Rope {
+	// results shorter than this are copied right away, a node would not pay for itself
+	private static final int MIN_LENGTH = 64;
+
+	private final int length;
+	// String or Rope; both null once flattened
+	private Object left;
+	private Object right;
+	private String flat = null;
+
+	private Rope(Object left, Object right, int length) {
+		this.left = left;
+		this.right = right;
+		this.length = length;
+	}
+
+	public static boolean isString(Object value) {
+		return value instanceof String || value instanceof Rope;
+	}
+
+	// whether a + b is short enough to be a string; every + checks this before concat and
+	// reports "Zeichenkette zu lang." at its own line otherwise
+	public static boolean fits(Object a, Object b) {
+		return (long) length(a) + length(b) <= Integer.MAX_VALUE;
+	}
+
+	// a + b on two Lox strings that fit
+	public static Object concat(Object a, Object b) {
+		int length = length(a) + length(b);
+		if (length < MIN_LENGTH)
+			return a.toString() + b.toString();
+		return new Rope(a, b, length);
+	}
+
+	private static int length(Object string) {
+		return string instanceof Rope ? ((Rope) string).length : ((String) string).length();
+	}
+
+	@Override
+	public String toString() {
+		if (flat == null)
+			flatten();
+		return flat;
+	}
+
+	// walks the parts with a stack of its own: a string built in a loop nests one Rope per +
+	private void flatten() {
+		StringBuilder builder = new StringBuilder(length);
+		ArrayDeque<Object> parts = new ArrayDeque<>();
+		parts.push(this);
+		while (!parts.isEmpty()) {
+			Object part = parts.pop();
+			if (part instanceof String) {
+				builder.append((String) part);
+				continue;
+			}
+			Rope rope = (Rope) part;
+			if (rope.flat != null) {
+				builder.append(rope.flat);
+			} else {
+				parts.push(rope.right);
+				parts.push(rope.left);
+			}
+		}
+		flat = builder.toString();
+		left = null; // the parts are not needed any more
+		right = null;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other instanceof Rope)
+			return other == this || (length == ((Rope) other).length && toString().equals(other.toString()));
+		return other instanceof String && toString().equals(other);
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+}
@@ -1,18 +1,38 @@
 package LOX;
 
 import static LOX.TokenType.*; // imports all TokenType constants for easier referencing
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+// Scans the UTF-8 bytes of the source directly, so a script file can be memory-mapped and
+// never decoded as a whole. Tokens go into a TokenStream as offset and length into the source;
+// only string values and each name's first occurrence become Strings here.
+// Everything but the umlauts, ß and the contents of strings and comments is ASCII, one byte
+// per character; an umlaut or ß is the two bytes 0xC3 and one of UMLAUTS.
 public class Scanner {
-	private final String source;
-	private final List<Token> tokens = new ArrayList<>();
+	private final ByteBuffer source; // UTF-8, read with absolute gets from 0 to length
+	private final int length;
+	private final int end; // tokens start before end; a string may run on past it
+	private TokenStream tokens;
+	private final List<ScanError> errors; // null: errors are reported right away
+	private byte[] text = new byte[64]; // reused to decode a lexeme
+
+	// the names seen so far, by their bytes, with what they scan to: a keyword's type, or
+	// IDENTIFIER and the symbol id. Open addressing, at most half full; a null type is free.
+	private TokenType[] nameTypes = new TokenType[256];
+	private int[] nameSymbols = new int[256];
+	private int[] nameHashes = new int[256];
+	private int[] nameOffsets = new int[256]; // where the first occurrence is in the source
+	private int[] nameLengths = new int[256];
+	private int names = 0;
 	// pointers for tracking the position within the source
-	private int start = 0; // start index of the current Lexeme being scanner
-	private int current = 0; // current index
-	private int line = 1; // line number: used for error reporting
+	private int start; // start index of the current Lexeme being scanner
+	private int current; // current index
+	private int line; // line number: used for error reporting
 	
 	// reserved keywords - NOW IN GERMAN!
 	private static final Map<String, TokenType> keywords;
@@ -36,33 +56,108 @@ public class Scanner {
 		keywords.put("während", WHILE);     // "while" -> "während"
 	}
 
+	// 10^0 .. 10^22, the powers of ten a double holds exactly
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	// second bytes of ä ö ü Ä Ö Ü ß after 0xC3
+	private static final boolean[] UMLAUTS = new boolean[256];
+	static {
+		for (int second : new int[] { 0xA4, 0xB6, 0xBC, 0x84, 0x96, 0x9C, 0x9F })
+			UMLAUTS[second] = true;
+	}
+
 	// constructor
 	Scanner(String source) {
+		this(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	// the UTF-8 bytes between the buffer's start and its limit, e.g. a mapped script file
+	Scanner(ByteBuffer source) {
+		this(source, 0, source.limit(), 1, null);
+	}
+
+	// a scanner for the tokens that start in from..to, the first on the given line, for
+	// ParallelScanner; it keeps its errors until reportErrors()
+	Scanner(ByteBuffer source, int from, int to, int line) {
+		this(source, from, to, line, new ArrayList<>());
+	}
+
+	private Scanner(ByteBuffer source, int from, int to, int line, List<ScanError> errors) {
 		this.source = source;
+		this.length = source.limit();
+		this.end = to;
+		this.current = from;
+		this.line = line;
+		this.errors = errors;
 	}
 
 	// Main Loop
-	List<Token> scanTokens() {
-		while (!isAtEnd()) {
+	TokenStream scanTokens() {
+		if (ParallelScanner.isWorthIt(length))
+			return new ParallelScanner(source).scanTokens();
+		scan();
+		// at the end, add End Of File token
+		tokens.add(EOF, length, 0, line, -1);
+		return tokens;
+	}
+
+	// the tokens of this scanner's part of the source, without EOF
+	TokenStream scanChunk() {
+		scan();
+		return tokens;
+	}
+
+	private void scan() {
+		// a low guess of one token per eight bytes, so a large script does not reserve room it may
+		// never use; the stream grows by half from there, which a dense script pays for a few times
+		tokens = new TokenStream(source, (end - current) / 8 + 16);
+		while (current < end) {
 			start = current; // start of the token
 			scanToken(); // scan the token
 		}
-		// at the end, add End Of File token
-		tokens.add(new Token(EOF, "", null, line));
-		return tokens;
 	}
 
-	// used to detect strings
-	private boolean isAlpha(char c) {
-		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || 
-		       (c >= 'ä' && c <= 'ä') || (c >= 'ö' && c <= 'ö') || (c >= 'ü' && c <= 'ü') ||
-		       (c >= 'Ä' && c <= 'Ä') || (c >= 'Ö' && c <= 'Ö') || (c >= 'Ü' && c <= 'Ü') ||
-		       (c >= 'ß' && c <= 'ß');
+	// a chunk scanner's errors, in the order they were found
+	void reportErrors() {
+		for (ScanError error : errors)
+			Lox.error(error.line, error.message);
+	}
+
+	private void error(int line, String message) {
+		if (errors == null)
+			Lox.error(line, message);
+		else
+			errors.add(new ScanError(line, message));
+	}
+
+	private static final class ScanError {
+		final int line;
+		final String message;
+
+		ScanError(int line, String message) {
+			this.line = line;
+			this.message = message;
+		}
+	}
+
+	// used to detect identifiers; the umlauts and ß are two bytes, see isUmlaut
+	private boolean isAlpha(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	}
+
+	// whether the bytes first, second are one of ä ö ü Ä Ö Ü ß
+	private boolean isUmlaut(int first, int second) {
+		return first == 0xC3 && UMLAUTS[second];
 	}
 
 	// recognizes tokens and adds them to the list
 	private void scanToken() {
-		char c = advance();
+		int c = advance();
 		switch (c) {
 		// single-character tokens
 		case '(':
@@ -77,6 +172,12 @@ public class Scanner {
 		case '}':
 			addToken(RIGHT_BRACE);
 			break;
+		case '[':
+			addToken(LEFT_BRACKET);
+			break;
+		case ']':
+			addToken(RIGHT_BRACKET);
+			break;
 		case ',':
 			addToken(COMMA);
 			break;
@@ -144,10 +245,16 @@ public class Scanner {
 			// reserved keywords
 			else if (isAlpha(c)) {
 				identifier();
+			} else if (isUmlaut(c, peek())) {
+				advance();
+				identifier();
 			}
 			// Syntax Error
 			else {
-				Lox.error(line, "Unerwartetes Zeichen.");
+				// one error for the whole character, not for each of its bytes
+				while ((peek() & 0xC0) == 0x80)
+					advance();
+				error(line, "Unerwartetes Zeichen.");
 			}
 			break;
 		}
@@ -158,7 +265,7 @@ public class Scanner {
 	private boolean match(char expected) {
 		if (isAtEnd())
 			return false;
-		if (source.charAt(current) != expected)
+		if (source.get(current) != expected)
 			return false;
 
 		current++;
@@ -167,17 +274,92 @@ public class Scanner {
 
 	// recognizes identifiers
 	private void identifier() {
-		while (isAlphaNumeric(peek()))
-			advance();
-		String text = source.substring(start, current);
-		TokenType type = keywords.get(text);
-		if (type == null)
-			type = IDENTIFIER;
-		addToken(type);
+		while (true) {
+			if (isAlphaNumeric(peek())) {
+				advance();
+			} else if (isUmlaut(peek(), peekNext())) {
+				advance();
+				advance();
+			} else {
+				break;
+			}
+		}
+		// every occurrence of a name shares the interned String and its symbol id
+		int slot = name();
+		TokenType type = nameTypes[slot];
+		tokens.add(type, start, current - start, line, type == IDENTIFIER ? nameSymbols[slot] : -1);
+	}
+
+	// the slot of the name from start to current, added on its first occurrence
+	private int name() {
+		if ((names + 1) * 2 > nameTypes.length)
+			growNames();
+		int hash = 0;
+		for (int i = start; i < current; i++)
+			hash = 31 * hash + source.get(i);
+		hash ^= hash >>> 16;
+
+		int mask = nameTypes.length - 1;
+		int slot = hash & mask;
+		while (nameTypes[slot] != null) {
+			if (nameHashes[slot] == hash && isName(slot))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		String text = text(start, current);
+		TokenType type = keywords.getOrDefault(text, IDENTIFIER);
+		nameTypes[slot] = type;
+		nameSymbols[slot] = type == IDENTIFIER ? Symbols.intern(text) : -1;
+		nameHashes[slot] = hash;
+		nameOffsets[slot] = start;
+		nameLengths[slot] = current - start;
+		names++;
+		return slot;
+	}
+
+	// whether the name in slot has the bytes from start to current
+	private boolean isName(int slot) {
+		if (nameLengths[slot] != current - start)
+			return false;
+		int offset = nameOffsets[slot];
+		for (int i = 0; i < nameLengths[slot]; i++) {
+			if (source.get(offset + i) != source.get(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	private void growNames() {
+		TokenType[] oldTypes = nameTypes;
+		int[] oldSymbols = nameSymbols;
+		int[] oldHashes = nameHashes;
+		int[] oldOffsets = nameOffsets;
+		int[] oldLengths = nameLengths;
+		int capacity = oldTypes.length * 2;
+		nameTypes = new TokenType[capacity];
+		nameSymbols = new int[capacity];
+		nameHashes = new int[capacity];
+		nameOffsets = new int[capacity];
+		nameLengths = new int[capacity];
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldTypes.length; i++) {
+			if (oldTypes[i] == null)
+				continue;
+			int slot = oldHashes[i] & mask;
+			while (nameTypes[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			nameTypes[slot] = oldTypes[i];
+			nameSymbols[slot] = oldSymbols[i];
+			nameHashes[slot] = oldHashes[i];
+			nameOffsets[slot] = oldOffsets[i];
+			nameLengths[slot] = oldLengths[i];
+		}
 	}
 
 	// checks if a character is a digit or not
-	private boolean isDigit(char c) {
+	private boolean isDigit(int c) {
 		return c >= '0' && c <= '9';
 	}
 
@@ -193,7 +375,32 @@ public class Scanner {
 			while (isDigit(peek()))
 				advance();
 		}
-		addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+		addToken(NUMBER, numberValue());
+	}
+
+	// the value of the number from start to current. With at most 15 significant digits and
+	// 22 after the point, the digits as a long and the power of ten are exact doubles, so one
+	// division rounds just like Double.parseDouble would; longer numbers go through it.
+	private double numberValue() {
+		long digits = 0;
+		int significant = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for (int i = start; i < current; i++) {
+			int c = source.get(i);
+			if (c == '.') {
+				fraction = true;
+				continue;
+			}
+			digits = digits * 10 + (c - '0');
+			if (digits != 0)
+				significant++;
+			if (fraction)
+				scale++;
+		}
+		if (significant <= 15 && scale < POWERS_OF_TEN.length)
+			return scale == 0 ? digits : digits / POWERS_OF_TEN[scale];
+		return Double.parseDouble(text(start, current));
 	}
 
 	// recognizes strings
@@ -205,57 +412,62 @@ public class Scanner {
 		}
 
 		if (isAtEnd()) {
-			Lox.error(line, "Unbeendete Zeichenkette.");
+			error(line, "Unbeendete Zeichenkette.");
 			return;
 		}
 		// the closing "
 		advance();
 
 		// trim the surrounding quotes.
-		String value = source.substring(start + 1, current - 1);
+		String value = text(start + 1, current - 1);
 		addToken(STRING, value);
 	}
 
 	// checks if we have reached the end of the source code
 	private boolean isAtEnd() {
-		return current >= source.length();
+		return current >= length;
 	}
 
-	// returns the next character without consuming it
-	private char peekNext() {
-		if (current + 1 >= source.length())
+	// returns the byte after the next one without consuming it
+	private int peekNext() {
+		if (current + 1 >= length)
 			return '\0';
-		return source.charAt(current + 1);
+		return source.get(current + 1) & 0xFF;
 	}
 
-	// move the pointer to the next character
-	private char advance() {
-		return source.charAt(current++);
+	// move the pointer to the next byte
+	private int advance() {
+		return source.get(current++) & 0xFF;
 	}
 
 	// helper function: identifiers
-	private boolean isAlphaNumeric(char c) {
+	private boolean isAlphaNumeric(int c) {
 		return isAlpha(c) || isDigit(c);
 	}
 
 	// helper function
 	private void addToken(TokenType type) {
-		addToken(type, null);
+		tokens.add(type, start, current - start, line, -1);
 	}
 
-	// adds the token into the tokens list
+	// adds a number or string and its value
 	private void addToken(TokenType type, Object literal) {
-		//extract the token
-		String text = source.substring(start, current);
-		// add the new token to the list
-		Token token = new Token(type, text, literal, line);
-		tokens.add(token);
+		tokens.addLiteral(type, literal, start, current - start, line);
 	}
 
 	// lookahead: look up the character but do not consume it
-	private char peek() {
+	private int peek() {
 		if (isAtEnd())
 			return '\0';
-		return source.charAt(current);
+		return source.get(current) & 0xFF;
+	}
+
+	// decodes the bytes from..to of the source
+	private String text(int from, int to) {
+		int size = to - from;
+		if (size > text.length)
+			text = new byte[Math.max(size, text.length * 2)];
+		source.get(from, text, 0, size);
+		return new String(text, 0, size, StandardCharsets.UTF_8);
 	}
 }
\ No newline at end of file
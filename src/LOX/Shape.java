@@ -0,0 +1,63 @@
+package LOX;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Hidden class of an Instance: which fields it has and at which index of its field array.
+// Instances that get the same fields in the same order share one Shape, reached from EMPTY
+// through the same transitions:
+//   EMPTY --x--> {x: 0} --y--> {x: 0, y: 1}
+// A Shape never changes once created; adding a field moves the instance to another one,
+// so Get and Set nodes can cache the offset for a shape they found.
+// A chain of transitions shares one offset table: each shape adds its own field to the table
+// it got from its parent and sees only the entries below its size, so a class whose instances
+// gain n fields one by one costs n entries, not n * n / 2. Only a second transition from the
+// same shape, where the table already holds another field at that offset, copies it.
+final class Shape {
+	static final Shape EMPTY = new Shape(new HashMap<>(), 0);
+
+	// the fields of this shape, and of shapes further down its chain, with their offsets
+	private final Map<String, Integer> offsets;
+	private final int size;
+	// the shapes reached by adding one more field, created on first use
+	private Map<String, Shape> transitions = null;
+
+	private Shape(Map<String, Integer> offsets, int size) {
+		this.offsets = offsets;
+		this.size = size;
+	}
+
+	// number of fields, which is also the offset the next field gets
+	int size() {
+		return size;
+	}
+
+	// offset of the field, -1 if instances of this shape do not have it
+	int offsetOf(String name) {
+		Integer offset = offsets.get(name);
+		return offset == null || offset >= size ? -1 : offset;
+	}
+
+	// the shape with one field more, added at offset size()
+	Shape withField(String name) {
+		if (transitions == null)
+			transitions = new HashMap<>();
+
+		Shape next = transitions.get(name);
+		if (next == null) {
+			Map<String, Integer> nextOffsets = offsets;
+			if (offsets.size() > size) {
+				// the table goes on with another transition's fields: copy our own
+				nextOffsets = new HashMap<>();
+				for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+					if (entry.getValue() < size)
+						nextOffsets.put(entry.getKey(), entry.getValue());
+				}
+			}
+			nextOffsets.put(name, size);
+			next = new Shape(nextOffsets, size + 1);
+			transitions.put(name, next);
+		}
+		return next;
+	}
+}
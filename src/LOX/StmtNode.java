@@ -0,0 +1,268 @@
+package LOX;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// executable statement, built once from a resolved Stmt by the NodeCompiler
+// execute reports how the statement completed instead of throwing: a return passes RETURN
+// back up through the enclosing blocks and loops to the function call, which takes the value
+// from Interpreter.returnValue. A return of a call to a Lox function passes TAIL_CALL instead:
+// the call has not been made yet, Function.invoke makes it once this body's frame is gone
+abstract class StmtNode {
+	static final int NORMAL = 0;
+	static final int RETURN = 1;
+	static final int TAIL_CALL = 2;
+
+	abstract int execute(Environment environment);
+
+	static final class Expression extends StmtNode {
+		final ExprNode expression;
+
+		Expression(ExprNode expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			expression.evaluateForEffect(environment);
+			return NORMAL;
+		}
+	}
+
+	static final class Print extends StmtNode {
+		final ExprNode expression;
+
+		Print(ExprNode expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			System.out.println(Builtins.stringify(expression.evaluate(environment)));
+			return NORMAL;
+		}
+	}
+
+	// declares a variable: by name in the global scope, in the next free slot of a local frame
+	static final class Var extends StmtNode {
+		final Token name;
+		final ExprNode initializer; // null: the variable starts as nichts
+		// stores the value unboxed until an initializer turns out not to be a number
+		private boolean numbers = true;
+
+		Var(Token name, ExprNode initializer) {
+			this.name = name;
+			this.initializer = initializer;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			if (initializer != null && numbers) {
+				try {
+					environment.defineNumber(name.lexeme(), initializer.evaluateNumber(environment));
+				} catch (UnexpectedResult result) {
+					numbers = false;
+					environment.define(name.lexeme(), result.value);
+				}
+				return NORMAL;
+			}
+
+			Object value = null;
+			if (initializer != null) {
+				value = initializer.evaluate(environment);
+			}
+			environment.define(name.lexeme(), value);
+			return NORMAL;
+		}
+	}
+
+	// a block that declares locals, so it gets a frame with exactly that many slots
+	static final class Block extends StmtNode {
+		final StmtNode[] statements;
+		final int frameSize;
+
+		Block(StmtNode[] statements, int frameSize) {
+			this.statements = statements;
+			this.frameSize = frameSize;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			Environment frame = new Environment(environment, frameSize);
+			for (StmtNode statement : statements) {
+				int status = statement.execute(frame);
+				if (status != NORMAL)
+					return status;
+			}
+			return NORMAL;
+		}
+	}
+
+	// a block without declarations (or a function body) runs in the frame it is given
+	static final class Sequence extends StmtNode {
+		final StmtNode[] statements;
+
+		Sequence(StmtNode[] statements) {
+			this.statements = statements;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			for (StmtNode statement : statements) {
+				int status = statement.execute(environment);
+				if (status != NORMAL)
+					return status;
+			}
+			return NORMAL;
+		}
+	}
+
+	static final class If extends StmtNode {
+		final ExprNode condition;
+		final StmtNode thenBranch;
+		final StmtNode elseBranch; // may be null
+
+		If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+			this.condition = condition;
+			this.thenBranch = thenBranch;
+			this.elseBranch = elseBranch;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			if (condition.evaluateTruthy(environment)) {
+				return thenBranch.execute(environment);
+			} else if (elseBranch != null) {
+				return elseBranch.execute(environment);
+			}
+			return NORMAL;
+		}
+	}
+
+	static final class While extends StmtNode {
+		final ExprNode condition;
+		final StmtNode body;
+
+		While(ExprNode condition, StmtNode body) {
+			this.condition = condition;
+			this.body = body;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			while (condition.evaluateTruthy(environment)) {
+				int status = body.execute(environment);
+				if (status != NORMAL)
+					return status;
+			}
+			return NORMAL;
+		}
+	}
+
+	static final class Return extends StmtNode {
+		final Interpreter interpreter;
+		final ExprNode value; // null: returns nichts
+
+		Return(Interpreter interpreter, ExprNode value) {
+			this.interpreter = interpreter;
+			this.value = value;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			Object result = null;
+			if (value != null)
+				result = value.evaluate(environment);
+
+			// nothing else runs before the call picks it up, so one register is enough
+			interpreter.returnValue = result;
+			return RETURN;
+		}
+	}
+
+	// zurückgeben f(...): the callee and arguments are evaluated here, the call itself is left
+	// to the trampoline in Function.invoke, so tail recursion does not grow the Java stack
+	static final class TailCall extends StmtNode {
+		final Interpreter interpreter;
+		final ExprNode call;
+
+		TailCall(Interpreter interpreter, ExprNode call) {
+			this.interpreter = interpreter;
+			this.call = call;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			Object result = call.evaluateTail(environment);
+			if (result == LOX.Function.TAIL_CALL)
+				return TAIL_CALL;
+			interpreter.returnValue = result;
+			return RETURN;
+		}
+	}
+
+	// creates the closure over the current frame and declares it
+	static final class Function extends StmtNode {
+		final Stmt.Function declaration;
+		final StmtNode body;
+		final int frameSize;
+
+		Function(Stmt.Function declaration, StmtNode body, int frameSize) {
+			this.declaration = declaration;
+			this.body = body;
+			this.frameSize = frameSize;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			LOX.Function function = new LOX.Function(declaration, body, frameSize, environment, false, false);
+			environment.define(declaration.name.lexeme(), function);
+			return NORMAL;
+		}
+	}
+
+	static final class Class extends StmtNode {
+		final Token name;
+		final ExprNode superclass; // may be null
+		final Token superclassName;
+		final Function[] methods;
+
+		Class(Token name, ExprNode superclass, Token superclassName, Function[] methods) {
+			this.name = name;
+			this.superclass = superclass;
+			this.superclassName = superclassName;
+			this.methods = methods;
+		}
+
+		@Override
+		int execute(Environment environment) {
+			Object superValue = null;
+			if (superclass != null) {
+				superValue = superclass.evaluate(environment);
+				if (!(superValue instanceof LOX.Class)) {
+					throw new RuntimeError(superclassName, "Die Superklasse muss eine Klasse sein.");
+				}
+			}
+
+			// the methods close over a frame holding "super"
+			Environment methodClosure = environment;
+			if (superValue != null) {
+				methodClosure = new Environment(environment, 1);
+				methodClosure.define("super", superValue);
+			}
+
+			Map<String, LOX.Function> functions = new HashMap<>();
+			for (Function method : methods) {
+				String methodName = method.declaration.name.lexeme();
+				functions.put(methodName, new LOX.Function(method.declaration, method.body, method.frameSize,
+						methodClosure, true, methodName.equals("init")));
+			}
+
+			// defined only now: a local class takes the next slot of its frame, and methods that
+			// refer to the class by name only look it up once they are called
+			LOX.Class klass = new LOX.Class(name.lexeme(), (LOX.Class) superValue, functions);
+			environment.define(name.lexeme(), klass);
+			return NORMAL;
+		}
+	}
+}
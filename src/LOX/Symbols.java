@@ -0,0 +1,45 @@
+package LOX;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The symbol table: every identifier the Scanner sees is interned here once, so all tokens
+// of a name share one String and carry the same small integer id. Global scopes are arrays
+// indexed by that id, and since equal names are the same String, the remaining name-keyed
+// maps (shapes, method tables) compare them by reference.
+// Safe to use from several threads: lookups of known names take no lock.
+final class Symbols {
+	private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+	// id -> name; replaced by a longer copy when full
+	private static volatile String[] names = new String[256];
+	private static int count = 0;
+
+	private Symbols() {
+	}
+
+	// the id of the name, registering it on first use
+	static int intern(String name) {
+		Integer id = ids.get(name);
+		if (id != null)
+			return id;
+		return register(name);
+	}
+
+	private static synchronized int register(String name) {
+		Integer id = ids.get(name);
+		if (id != null)
+			return id; // registered by another thread meanwhile
+
+		if (count == names.length)
+			names = Arrays.copyOf(names, count * 2);
+		names[count] = name;
+		// published after the name is stored, so whoever finds the id also finds the name
+		ids.put(name, count);
+		return count++;
+	}
+
+	// the canonical String of the name with this id
+	static String name(int id) {
+		return names[id];
+	}
+}
@@ -1,21 +1,57 @@
 package LOX;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public class Token {
-	final TokenType type; 
-	final String lexeme; 
-	final Object literal; 
+	final TokenType type;
+	final Object literal;
 	final int line; //in case of error, we will get to know at which line the error occured
-	
+	final int symbol; // identifiers only: the id of the name in Symbols, -1 otherwise
+	// where a scanned token's text lies in the UTF-8 source; null for a token made up in code
+	private final ByteBuffer source;
+	private final int offset;
+	private final int length;
+	private String lexeme; // decoded from the source on first use
+
 	// constructor
 	Token(TokenType type, String lexeme, Object literal, int line) {
+		this(type, lexeme, literal, line, type == TokenType.IDENTIFIER ? Symbols.intern(lexeme) : -1);
+	}
+
+	// a token whose name is already interned; the lexeme becomes the canonical String
+	Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
+		this(type, literal, line, symbol, null, 0, 0);
+		this.lexeme = symbol < 0 ? lexeme : Symbols.name(symbol);
+	}
+
+	// a scanned token: only identifiers have their text as a String right away, the canonical one
+	Token(TokenType type, Object literal, int line, int symbol, ByteBuffer source, int offset, int length) {
 		this.type = type;
-		this.lexeme = lexeme;
 		this.literal = literal;
 		this.line = line;
+		this.symbol = symbol;
+		this.source = source;
+		this.offset = offset;
+		this.length = length;
+		if (symbol >= 0)
+			this.lexeme = Symbols.name(symbol);
+	}
+
+	// the text of the token; threads sharing the token may each decode it, which is harmless
+	String lexeme() {
+		String text = lexeme;
+		if (text == null) {
+			byte[] bytes = new byte[length];
+			source.get(offset, bytes);
+			text = new String(bytes, StandardCharsets.UTF_8);
+			lexeme = text;
+		}
+		return text;
 	}
-	
+
 	// to string (for testing)
 	public String toString() {
-		return type + " " + lexeme + " " + literal;
+		return type + " " + lexeme() + " " + literal;
 	}
 }
@@ -0,0 +1,107 @@
+package LOX;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// The tokens of a source as parallel arrays instead of one object each: per token a byte for
+// the type and ints for where its text is, its line and its value, about 17 bytes in all.
+// Literals sit in a side table, so only numbers and strings pay for a reference. The Parser
+// reads types straight from here and makes a Token only for what the tree keeps.
+final class TokenStream {
+	private static final TokenType[] TYPES = TokenType.values();
+
+	private final ByteBuffer source;
+	private byte[] types;
+	private int[] offsets;
+	private int[] lengths;
+	private int[] lines;
+	private int[] values; // IDENTIFIER: the symbol id; NUMBER, STRING: the index in literals
+	private int count = 0;
+
+	private Object[] literals = new Object[16];
+	private int literalCount = 0;
+
+	// room for capacity tokens at first; the arrays grow by half when they are full
+	TokenStream(ByteBuffer source, int capacity) {
+		this.source = source;
+		types = new byte[capacity];
+		offsets = new int[capacity];
+		lengths = new int[capacity];
+		lines = new int[capacity];
+		values = new int[capacity];
+	}
+
+	int size() {
+		return count;
+	}
+
+	// value: the symbol id of an identifier, -1 for every other token without a literal
+	void add(TokenType type, int offset, int length, int line, int value) {
+		if (count == types.length)
+			grow();
+		types[count] = (byte) type.ordinal();
+		offsets[count] = offset;
+		lengths[count] = length;
+		lines[count] = line;
+		values[count] = value;
+		count++;
+	}
+
+	void addLiteral(TokenType type, Object literal, int offset, int length, int line) {
+		if (literalCount == literals.length)
+			literals = Arrays.copyOf(literals, literalCount * 2);
+		literals[literalCount] = literal;
+		add(type, offset, length, line, literalCount++);
+	}
+
+	// adds the tokens of other, which must come from the same source
+	void append(TokenStream other) {
+		while (count + other.count > types.length)
+			grow();
+		System.arraycopy(other.types, 0, types, count, other.count);
+		System.arraycopy(other.offsets, 0, offsets, count, other.count);
+		System.arraycopy(other.lengths, 0, lengths, count, other.count);
+		System.arraycopy(other.lines, 0, lines, count, other.count);
+		System.arraycopy(other.values, 0, values, count, other.count);
+		// other's literals follow ours
+		for (int i = count; i < count + other.count; i++) {
+			TokenType type = type(i);
+			if (type == TokenType.NUMBER || type == TokenType.STRING)
+				values[i] += literalCount;
+		}
+		count += other.count;
+
+		if (literalCount + other.literalCount > literals.length)
+			literals = Arrays.copyOf(literals, literalCount + other.literalCount);
+		System.arraycopy(other.literals, 0, literals, literalCount, other.literalCount);
+		literalCount += other.literalCount;
+	}
+
+	TokenType type(int index) {
+		return TYPES[types[index]];
+	}
+
+	// the value of a number or string, null for any other token
+	Object literal(int index) {
+		TokenType type = type(index);
+		if (type == TokenType.NUMBER || type == TokenType.STRING)
+			return literals[values[index]];
+		return null;
+	}
+
+	// the token at index as an object, for the tree; a new one on every call
+	Token token(int index) {
+		TokenType type = type(index);
+		int symbol = type == TokenType.IDENTIFIER ? values[index] : -1;
+		return new Token(type, literal(index), lines[index], symbol, source, offsets[index], lengths[index]);
+	}
+
+	private void grow() {
+		int capacity = types.length + (types.length >> 1) + 16;
+		types = Arrays.copyOf(types, capacity);
+		offsets = Arrays.copyOf(offsets, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		lines = Arrays.copyOf(lines, capacity);
+		values = Arrays.copyOf(values, capacity);
+	}
+}
@@ -12,6 +12,8 @@ public enum TokenType {
 	  RIGHT_PAREN,     // )
 	  LEFT_BRACE,      // {
 	  RIGHT_BRACE,     // }
+	  LEFT_BRACKET,    // [
+	  RIGHT_BRACKET,   // ]
 	  COMMA,           // ,
 	  DOT,             // .
 	  MINUS,           // -
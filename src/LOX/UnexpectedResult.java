@@ -0,0 +1,14 @@
+package LOX;
+
+// thrown by a typed evaluate method (e.g. ExprNode.evaluateNumber) when the value turns out
+// to have another type. It carries the value, so the caller can go on without evaluating
+// the expression a second time.
+class UnexpectedResult extends RuntimeException {
+	final Object value;
+
+	// no message, no cause, no stack trace: it is a signal, not an error
+	UnexpectedResult(Object value) {
+		super(null, null, false, false);
+		this.value = value;
+	}
+}
@@ -0,0 +1,649 @@
+package LOX;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Stack based virtual machine executing the bytecode produced by the BytecodeCompiler.
+ * Lox calls do not recurse on the Java stack: every call pushes a CallFrame and the
+ * frame's locals are a window of the shared value stack. Both live on the heap and grow as
+ * calls nest, so recursion is only limited by maxDepth, not by the size of the thread stack.
+ */
+class VM {
+	// how deep calls may nest unless --max-tiefe says otherwise
+	static final int DEFAULT_MAX_DEPTH = 100_000;
+	// global slot marker: no variable of that name is defined
+	private static final Object UNDEFINED = new Object();
+
+	// Runtime objects of the VM
+
+	// a prototype together with the variables it captured
+	static final class Closure {
+		final Prototype function;
+		final Upvalue[] upvalues;
+
+		Closure(Prototype function) {
+			this.function = function;
+			this.upvalues = new Upvalue[function.upvalueCount];
+		}
+
+		@Override
+		public String toString() {
+			return function.toString();
+		}
+	}
+
+	// a captured variable: points at a stack slot while the variable is in scope, holds it afterwards
+	static final class Upvalue {
+		int slot;
+		Object closed;
+		boolean isClosed = false;
+		Upvalue next; // open upvalues form a list sorted by stack slot, highest first
+
+		Upvalue(int slot, Upvalue next) {
+			this.slot = slot;
+			this.next = next;
+		}
+	}
+
+	static final class VmClass {
+		final String name;
+		final Map<String, Closure> methods = new HashMap<>();
+
+		VmClass(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	static final class VmInstance {
+		final VmClass klass;
+		final Map<String, Object> fields = new HashMap<>();
+
+		VmInstance(VmClass klass) {
+			this.klass = klass;
+		}
+
+		@Override
+		public String toString() {
+			return klass.name + " Instanz";
+		}
+	}
+
+	static final class BoundMethod {
+		final Object receiver;
+		final Closure method;
+
+		BoundMethod(Object receiver, Closure method) {
+			this.receiver = receiver;
+			this.method = method;
+		}
+
+		@Override
+		public String toString() {
+			return method.toString();
+		}
+	}
+
+	// an active call: which closure runs, where it is in its code and where its slots start
+	private static final class CallFrame {
+		Closure closure;
+		int ip;
+		int base;
+	}
+
+	private final int maxDepth;
+	private Object[] stack = new Object[4096];
+	private int stackTop = 0;
+	private CallFrame[] frames = new CallFrame[64]; // created as calls first get that deep
+	private int frameCount = 0;
+	// values by the symbol id of their name, UNDEFINED where no global of that name exists
+	private Object[] globals = new Object[64];
+	private Upvalue openUpvalues = null;
+
+	// defines the native functions, like the tree-walking Interpreter
+	VM(int maxDepth) {
+		this.maxDepth = maxDepth;
+		Arrays.fill(globals, UNDEFINED);
+
+		NativeRegistry.standard().forEach((name, function) -> defineGlobal(Symbols.intern(name), function));
+	}
+
+	private void defineGlobal(int symbol, Object value) {
+		if (symbol >= globals.length) {
+			int length = globals.length;
+			globals = Arrays.copyOf(globals, Math.max(symbol + 1, length * 2));
+			Arrays.fill(globals, length, globals.length, UNDEFINED);
+		}
+		globals[symbol] = value;
+	}
+
+	// compiles and runs a resolved program; runtime errors are reported through Lox.runtimeError
+	void interpret(List<Stmt> statements) {
+		Prototype script = new BytecodeCompiler().compile(statements);
+		if (Lox.hadError)
+			return;
+
+		Closure closure = new Closure(script);
+		push(closure);
+		try {
+			call(closure, 0);
+			run();
+		} catch (RuntimeError error) {
+			Lox.runtimeError(error);
+			resetStack();
+		}
+	}
+
+	private void resetStack() {
+		stackTop = 0;
+		frameCount = 0;
+		openUpvalues = null;
+	}
+
+	private void push(Object value) {
+		stack[stackTop++] = value;
+	}
+
+	private Object pop() {
+		return stack[--stackTop];
+	}
+
+	private Object peek(int distance) {
+		return stack[stackTop - 1 - distance];
+	}
+
+	// the dispatch loop
+	private void run() {
+		CallFrame frame = frames[frameCount - 1];
+		byte[] code = frame.closure.function.chunk.code;
+		List<Object> constants = frame.closure.function.chunk.constants;
+		int ip = frame.ip;
+
+		while (true) {
+			byte instruction = code[ip++];
+			switch (instruction) {
+			case OpCode.CONSTANT:
+				push(constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)));
+				ip += 2;
+				break;
+			case OpCode.NIL:
+				push(null);
+				break;
+			case OpCode.TRUE:
+				push(true);
+				break;
+			case OpCode.FALSE:
+				push(false);
+				break;
+			case OpCode.POP:
+				stackTop--;
+				break;
+
+			case OpCode.GET_LOCAL:
+				push(stack[frame.base + (code[ip++] & 0xff)]);
+				break;
+			case OpCode.SET_LOCAL:
+				stack[frame.base + (code[ip++] & 0xff)] = peek(0);
+				break;
+			case OpCode.GET_GLOBAL: {
+				int symbol = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+				ip += 2;
+				if (symbol >= globals.length || globals[symbol] == UNDEFINED) {
+					frame.ip = ip;
+					throw error("Undefinierte Variable '" + Symbols.name(symbol) + "'.");
+				}
+				push(globals[symbol]);
+				break;
+			}
+			case OpCode.DEFINE_GLOBAL: {
+				int symbol = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+				ip += 2;
+				defineGlobal(symbol, pop());
+				break;
+			}
+			case OpCode.SET_GLOBAL: {
+				int symbol = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+				ip += 2;
+				if (symbol >= globals.length || globals[symbol] == UNDEFINED) {
+					frame.ip = ip;
+					throw error("Undefinierte Variable '" + Symbols.name(symbol) + "'.");
+				}
+				globals[symbol] = peek(0);
+				break;
+			}
+			case OpCode.GET_UPVALUE: {
+				Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+				push(upvalue.isClosed ? upvalue.closed : stack[upvalue.slot]);
+				break;
+			}
+			case OpCode.SET_UPVALUE: {
+				Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+				if (upvalue.isClosed) {
+					upvalue.closed = peek(0);
+				} else {
+					stack[upvalue.slot] = peek(0);
+				}
+				break;
+			}
+			case OpCode.CLOSE_UPVALUE:
+				closeUpvalues(stackTop - 1);
+				stackTop--;
+				break;
+
+			case OpCode.GET_PROPERTY: {
+				String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+				ip += 2;
+				frame.ip = ip;
+				if (!(peek(0) instanceof VmInstance)) {
+					throw error("Nur Instanzen haben Eigenschaften.");
+				}
+				VmInstance instance = (VmInstance) peek(0);
+				Object value = instance.fields.get(name);
+				if (value != null || instance.fields.containsKey(name)) {
+					stack[stackTop - 1] = value;
+					break;
+				}
+				bindMethod(instance.klass, name);
+				break;
+			}
+			case OpCode.SET_PROPERTY: {
+				String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+				ip += 2;
+				if (!(peek(1) instanceof VmInstance)) {
+					frame.ip = ip;
+					throw error("Nur Instanzen haben Eigenschaften.");
+				}
+				VmInstance instance = (VmInstance) peek(1);
+				Object value = pop();
+				instance.fields.put(name, value);
+				stack[stackTop - 1] = value;
+				break;
+			}
+			case OpCode.GET_SUPER: {
+				String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+				ip += 2;
+				frame.ip = ip;
+				VmClass superclass = (VmClass) pop();
+				bindMethod(superclass, name);
+				break;
+			}
+
+			case OpCode.EQUAL: {
+				Object b = pop();
+				Object a = pop();
+				push(Interpreter.isEqual(a, b));
+				break;
+			}
+			case OpCode.GREATER:
+			case OpCode.GREATER_EQUAL:
+			case OpCode.LESS:
+			case OpCode.LESS_EQUAL:
+			case OpCode.SUBTRACT:
+			case OpCode.MULTIPLY:
+			case OpCode.DIVIDE: {
+				if (!(peek(0) instanceof Double) || !(peek(1) instanceof Double)) {
+					frame.ip = ip;
+					throw error("Operanden müssen Zahlen sein.");
+				}
+				double b = (double) pop();
+				double a = (double) pop();
+				push(arithmetic(instruction, a, b));
+				break;
+			}
+			case OpCode.ADD: {
+				Object b = peek(0);
+				Object a = peek(1);
+				if (a instanceof Double && b instanceof Double) {
+					stackTop -= 2;
+					push((double) a + (double) b);
+				} else if (Rope.isString(a) && Rope.isString(b)) {
+					if (!Rope.fits(a, b)) {
+						frame.ip = ip;
+						throw error("Zeichenkette zu lang.");
+					}
+					stackTop -= 2;
+					push(Rope.concat(a, b));
+				} else {
+					frame.ip = ip;
+					throw error("Operanden müssen zwei Zahlen oder zwei Zeichenketten sein.");
+				}
+				break;
+			}
+			case OpCode.NOT:
+				push(!Interpreter.isTruthy(pop()));
+				break;
+			case OpCode.NEGATE:
+				if (!(peek(0) instanceof Double)) {
+					frame.ip = ip;
+					throw error("Operand muss eine Zahl sein.");
+				}
+				push(-(double) pop());
+				break;
+
+			case OpCode.PRINT:
+				System.out.println(Builtins.stringify(pop()));
+				break;
+			case OpCode.JUMP:
+				ip += ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+				ip += 2;
+				break;
+			case OpCode.JUMP_IF_FALSE: {
+				int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+				ip += 2;
+				if (!Interpreter.isTruthy(peek(0)))
+					ip += offset;
+				break;
+			}
+			case OpCode.LOOP:
+				ip -= ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+				ip += 2;
+				break;
+
+			case OpCode.CALL: {
+				int argCount = code[ip++] & 0xff;
+				frame.ip = ip;
+				callValue(peek(argCount), argCount);
+				frame = frames[frameCount - 1];
+				code = frame.closure.function.chunk.code;
+				constants = frame.closure.function.chunk.constants;
+				ip = frame.ip;
+				break;
+			}
+			case OpCode.INVOKE: {
+				String method = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+				int argCount = code[ip + 2] & 0xff;
+				ip += 3;
+				frame.ip = ip;
+				invoke(method, argCount);
+				frame = frames[frameCount - 1];
+				code = frame.closure.function.chunk.code;
+				constants = frame.closure.function.chunk.constants;
+				ip = frame.ip;
+				break;
+			}
+			case OpCode.SUPER_INVOKE: {
+				String method = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+				int argCount = code[ip + 2] & 0xff;
+				ip += 3;
+				frame.ip = ip;
+				VmClass superclass = (VmClass) pop();
+				invokeFromClass(superclass, method, argCount);
+				frame = frames[frameCount - 1];
+				code = frame.closure.function.chunk.code;
+				constants = frame.closure.function.chunk.constants;
+				ip = frame.ip;
+				break;
+			}
+			case OpCode.CLOSURE: {
+				Prototype function = (Prototype) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+				ip += 2;
+				Closure closure = new Closure(function);
+				push(closure);
+				for (int i = 0; i < closure.upvalues.length; i++) {
+					boolean isLocal = code[ip++] == 1;
+					int index = code[ip++] & 0xff;
+					if (isLocal) {
+						closure.upvalues[i] = captureUpvalue(frame.base + index);
+					} else {
+						closure.upvalues[i] = frame.closure.upvalues[index];
+					}
+				}
+				break;
+			}
+			case OpCode.RETURN: {
+				Object result = pop();
+				closeUpvalues(frame.base);
+				frameCount--;
+				if (frameCount == 0) {
+					stackTop = 0;
+					return;
+				}
+
+				stackTop = frame.base;
+				push(result);
+				frame = frames[frameCount - 1];
+				code = frame.closure.function.chunk.code;
+				constants = frame.closure.function.chunk.constants;
+				ip = frame.ip;
+				break;
+			}
+
+			case OpCode.CLASS:
+				push(new VmClass((String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff))));
+				ip += 2;
+				break;
+			case OpCode.INHERIT: {
+				Object superclass = peek(1);
+				if (!(superclass instanceof VmClass)) {
+					frame.ip = ip;
+					throw error("Die Superklasse muss eine Klasse sein.");
+				}
+				// copy-down inheritance: methods are fixed once the class is declared
+				VmClass subclass = (VmClass) peek(0);
+				subclass.methods.putAll(((VmClass) superclass).methods);
+				stackTop--; // subclass
+				break;
+			}
+			case OpCode.METHOD: {
+				String name = (String) constants.get(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff));
+				ip += 2;
+				Closure method = (Closure) peek(0);
+				((VmClass) peek(1)).methods.put(name, method);
+				stackTop--;
+				break;
+			}
+
+			case OpCode.LIST:
+				push(new LoxList(((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)));
+				ip += 2;
+				break;
+			case OpCode.LIST_APPEND:
+				((LoxList) stack[stackTop - 2]).add(stack[stackTop - 1]);
+				stackTop--;
+				break;
+			}
+		}
+	}
+
+	private static Object arithmetic(byte instruction, double a, double b) {
+		switch (instruction) {
+		case OpCode.GREATER:
+			return a > b;
+		case OpCode.GREATER_EQUAL:
+			return a >= b;
+		case OpCode.LESS:
+			return a < b;
+		case OpCode.LESS_EQUAL:
+			return a <= b;
+		case OpCode.SUBTRACT:
+			return a - b;
+		case OpCode.MULTIPLY:
+			return a * b;
+		default: // DIVIDE
+			return a / b;
+		}
+	}
+
+	// Calls
+
+	private void callValue(Object callee, int argCount) {
+		if (callee instanceof Closure) {
+			call((Closure) callee, argCount);
+			return;
+		}
+		if (callee instanceof BoundMethod) {
+			BoundMethod bound = (BoundMethod) callee;
+			stack[stackTop - argCount - 1] = bound.receiver;
+			call(bound.method, argCount);
+			return;
+		}
+		if (callee instanceof VmClass) {
+			VmClass klass = (VmClass) callee;
+			stack[stackTop - argCount - 1] = new VmInstance(klass);
+			Closure initializer = klass.methods.get("init");
+			if (initializer != null) {
+				call(initializer, argCount);
+			} else if (argCount != 0) {
+				throw error("Erwartet 0 Argumente, aber erhalten " + argCount + ".");
+			}
+			return;
+		}
+		if (callee instanceof Callable) {
+			Callable function = (Callable) callee;
+			if (argCount != function.arity()) {
+				throw error("Erwartet " + function.arity() + " Argumente, aber erhalten " + argCount + ".");
+			}
+			Object result = callNative(function, argCount);
+			stackTop -= argCount + 1;
+			push(result);
+			return;
+		}
+		throw error("Kann nur Funktionen und Klassen aufrufen.");
+	}
+
+	// the arguments are passed straight from the stack, only more than two need an array
+	private Object callNative(Callable function, int argCount) {
+		try {
+			switch (argCount) {
+			case 0:
+				return function.call0(null);
+			case 1:
+				return function.call1(null, stack[stackTop - 1]);
+			case 2:
+				return function.call2(null, stack[stackTop - 2], stack[stackTop - 1]);
+			default:
+				return function.callN(null, Arrays.copyOfRange(stack, stackTop - argCount, stackTop));
+			}
+		} catch (Builtins.NativeError e) {
+			throw error(e.getMessage());
+		}
+	}
+
+	// pushes a new frame; the callee and its arguments already sit on top of the stack
+	private void call(Closure closure, int argCount) {
+		if (argCount != closure.function.arity) {
+			throw error("Erwartet " + closure.function.arity + " Argumente, aber erhalten " + argCount + ".");
+		}
+
+		// a tail call (zurückgeben f(...)): the caller only returns what the call returns, so the
+		// callee and its arguments take the caller's slots and the caller's frame runs the callee
+		CallFrame caller = frameCount > 0 ? frames[frameCount - 1] : null;
+		if (caller != null && caller.closure.function.chunk.code[caller.ip] == OpCode.RETURN) {
+			closeUpvalues(caller.base);
+			System.arraycopy(stack, stackTop - argCount - 1, stack, caller.base, argCount + 1);
+			stackTop = caller.base + argCount + 1;
+			caller.closure = closure;
+			caller.ip = 0;
+			reserve(caller.base, closure.function);
+			return;
+		}
+
+		if (frameCount == maxDepth) {
+			throw error("Stapelüberlauf.");
+		}
+		if (frameCount == frames.length) {
+			frames = Arrays.copyOf(frames, frameCount * 2);
+		}
+		if (frames[frameCount] == null) {
+			frames[frameCount] = new CallFrame();
+		}
+		CallFrame frame = frames[frameCount++];
+		frame.closure = closure;
+		frame.ip = 0;
+		frame.base = stackTop - argCount - 1;
+		reserve(frame.base, closure.function);
+	}
+
+	// push does not check the bounds, so a frame gets all the room it will use when it starts:
+	// as many slots as the compiler found its locals and temporaries to need at most
+	private void reserve(int base, Prototype function) {
+		int needed = base + function.maxStackSize;
+		if (needed > stack.length) {
+			stack = Arrays.copyOf(stack, Math.max(needed, stack.length * 2));
+		}
+	}
+
+	private void invoke(String name, int argCount) {
+		Object receiver = peek(argCount);
+		if (!(receiver instanceof VmInstance)) {
+			throw error("Nur Instanzen haben Eigenschaften.");
+		}
+
+		VmInstance instance = (VmInstance) receiver;
+		Object value = instance.fields.get(name);
+		if (value != null || instance.fields.containsKey(name)) {
+			// a field holding a function shadows the method of the same name
+			stack[stackTop - argCount - 1] = value;
+			callValue(value, argCount);
+			return;
+		}
+
+		invokeFromClass(instance.klass, name, argCount);
+	}
+
+	private void invokeFromClass(VmClass klass, String name, int argCount) {
+		Closure method = klass.methods.get(name);
+		if (method == null) {
+			throw error("Undefinierte Eigenschaft '" + name + "'.");
+		}
+		call(method, argCount);
+	}
+
+	// replaces the instance on top of the stack with one of its class's methods bound to it
+	private void bindMethod(VmClass klass, String name) {
+		Closure method = klass.methods.get(name);
+		if (method == null) {
+			throw error("Undefinierte Eigenschaft '" + name + "'.");
+		}
+
+		BoundMethod bound = new BoundMethod(peek(0), method);
+		stack[stackTop - 1] = bound;
+	}
+
+	// Upvalues
+
+	// reuses the open upvalue for a slot if another closure captured it already
+	private Upvalue captureUpvalue(int slot) {
+		Upvalue previous = null;
+		Upvalue upvalue = openUpvalues;
+		while (upvalue != null && upvalue.slot > slot) {
+			previous = upvalue;
+			upvalue = upvalue.next;
+		}
+
+		if (upvalue != null && upvalue.slot == slot)
+			return upvalue;
+
+		Upvalue created = new Upvalue(slot, upvalue);
+		if (previous == null) {
+			openUpvalues = created;
+		} else {
+			previous.next = created;
+		}
+		return created;
+	}
+
+	// moves every captured variable at or above the given slot from the stack into its upvalue
+	private void closeUpvalues(int last) {
+		while (openUpvalues != null && openUpvalues.slot >= last) {
+			Upvalue upvalue = openUpvalues;
+			upvalue.closed = stack[upvalue.slot];
+			upvalue.isClosed = true;
+			openUpvalues = upvalue.next;
+		}
+	}
+
+	// builds the runtime error for the instruction that is currently executing
+	private RuntimeError error(String message) {
+		CallFrame frame = frames[frameCount - 1];
+		int line = frame.closure.function.chunk.getLine(frame.ip - 1);
+		return new RuntimeError(new Token(TokenType.EOF, "", null, line), message);
+	}
+}
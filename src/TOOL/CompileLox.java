@@ -0,0 +1,207 @@
+package TOOL;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import LOX.Builtins;
+import LOX.Lox;
+import LOX.LoxList;
+import LOX.LoxMap;
+import LOX.Rope;
+
+// compiles a German Lox script ahead of time into a runnable jar: the script is scanned, parsed and
+// resolved once, translated to Java source and compiled together with LoxRuntime, so running the
+// jar (java -jar) costs no parsing and HotSpot optimizes the program like any Java code.
+public class CompileLox {
+	private static final String PROGRAM = "LoxProgram";
+	private static final String CODE_TOO_LARGE = "compiler.err.limit.code";
+	// what JavaTranspiler puts after the opening of every function body
+	private static final Pattern MARKER = Pattern.compile("// funktion (\\S+), Zeile (\\d+)$");
+
+	// takes the script and the jar to write as arguments.
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Benutzung: compile_lox <skript.lox> <ausgabe.jar>");
+			System.exit(64);
+		}
+
+		String source = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8);
+		String java = Lox.toJava(source, PROGRAM);
+		if (java == null)
+			System.exit(65); // the errors have been reported like for a script that is run
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			System.err.println("Kein Java-Compiler verfügbar: compile_lox braucht ein JDK.");
+			System.exit(70);
+		}
+
+		Path work = Files.createTempDirectory("compile_lox");
+		try {
+			List<String> classes = writeRuntime(work);
+			Path program = work.resolve(PROGRAM + ".java");
+			Files.write(program, java.getBytes(StandardCharsets.UTF_8));
+
+			DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+			try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+				boolean compiled = compiler.getTask(null, files, diagnostics,
+						List.of("-nowarn", "-classpath", work.toString(), "-d", work.toString()), null,
+						files.getJavaFileObjects(program)).call();
+				if (!compiled) {
+					reportFailure(diagnostics.getDiagnostics(), java);
+					System.exit(tooLarge(diagnostics.getDiagnostics()) ? 65 : 70);
+				}
+			}
+
+			try (Stream<Path> files = Files.list(work)) {
+				files.filter(file -> file.getFileName().toString().endsWith(".class"))
+						.forEach(file -> classes.add(file.getFileName().toString()));
+			}
+			writeJar(work, classes, Paths.get(args[1]));
+		} finally {
+			delete(work);
+		}
+	}
+
+	private static boolean tooLarge(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+			if (diagnostic.getCode().equals(CODE_TOO_LARGE))
+				return true;
+		}
+		return false;
+	}
+
+	// a method over 64 KB of bytecode comes from the script and is reported like its other errors;
+	// anything else javac finds is a fault of the translation and is passed on as it is
+	private static void reportFailure(List<Diagnostic<? extends JavaFileObject>> diagnostics, String java) {
+		if (!tooLarge(diagnostics)) {
+			for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+				System.err.println(diagnostic);
+			}
+			System.err.println("Der erzeugte Java-Quelltext ließ sich nicht übersetzen.");
+			return;
+		}
+
+		String[] lines = java.split("\n");
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+			if (!diagnostic.getCode().equals(CODE_TOO_LARGE))
+				continue;
+			int at = (int) diagnostic.getLineNumber() - 1;
+			if (at >= 0 && at < lines.length && lines[at].contains("static void run()")) {
+				System.err.println("Fehler: Eine Anweisung außerhalb von Funktionen ist zu groß für eine"
+						+ " Java-Methode (höchstens 64 KB Bytecode).");
+				continue;
+			}
+			// a lambda's error is not reported at the lambda, so then it is the largest body
+			if (at < 0 || at >= lines.length || !MARKER.matcher(lines[at]).find())
+				at = largestFunction(lines);
+			Matcher marker = MARKER.matcher(at < 0 ? "" : lines[at]);
+			if (marker.find()) {
+				System.err.println("[Zeile " + marker.group(2) + "] Fehler: Die Funktion '" + marker.group(1)
+						+ "' ist zu groß für eine Java-Methode (höchstens 64 KB Bytecode).");
+			} else {
+				System.err.println("Fehler: Eine Funktion ist zu groß für eine Java-Methode (höchstens 64 KB"
+						+ " Bytecode).");
+			}
+		}
+	}
+
+	// the line opening the function body that runs over the most lines, -1 if there is none
+	private static int largestFunction(String[] lines) {
+		int largest = -1;
+		int largestLength = 0;
+		for (int i = 0; i < lines.length; i++) {
+			if (!MARKER.matcher(lines[i]).find())
+				continue;
+			int indent = indent(lines[i]);
+			int end = i + 1;
+			while (end < lines.length && indent(lines[end]) > indent) {
+				end++;
+			}
+			if (end - i > largestLength) {
+				largest = i;
+				largestLength = end - i;
+			}
+		}
+		return largest;
+	}
+
+	private static int indent(String line) {
+		int tabs = 0;
+		while (tabs < line.length() && line.charAt(tabs) == '\t') {
+			tabs++;
+		}
+		return tabs;
+	}
+
+	// copies the class files of LoxRuntime, the interpreter's classes it shares and their nested
+	// classes; returns their paths
+	private static List<String> writeRuntime(Path directory) throws IOException {
+		List<Class<?>> runtime = new ArrayList<>();
+		runtime.add(LoxRuntime.class);
+		runtime.add(Builtins.class);
+		runtime.add(LoxList.class);
+		runtime.add(LoxMap.class);
+		runtime.add(Rope.class);
+		for (int i = 0; i < runtime.size(); i++) {
+			for (Class<?> nested : runtime.get(i).getDeclaredClasses()) {
+				runtime.add(nested);
+			}
+		}
+
+		List<String> paths = new ArrayList<>();
+		for (Class<?> type : runtime) {
+			String path = type.getName().replace('.', '/') + ".class";
+			Path target = directory.resolve(path);
+			Files.createDirectories(target.getParent());
+			try (InputStream in = type.getResourceAsStream("/" + path)) {
+				Files.copy(in, target);
+			}
+			paths.add(path);
+		}
+		return paths;
+	}
+
+	private static void writeJar(Path directory, List<String> classes, Path jar) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, PROGRAM);
+
+		try (OutputStream file = Files.newOutputStream(jar);
+				JarOutputStream out = new JarOutputStream(file, manifest)) {
+			for (String path : classes) {
+				out.putNextEntry(new JarEntry(path));
+				Files.copy(directory.resolve(path), out);
+				out.closeEntry();
+			}
+		}
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+}
@@ -29,7 +29,8 @@ public class GenerateAst {
 						"Grouping : Expr expression", "Literal  : Object value",
 						"Logical  : Expr left, Token operator, Expr right", 
 						"Unary    : Token operator, Expr right",
-						"Variable : Token name"));
+						"Variable : Token name",
+						"ListLiteral : Token bracket, List<Expr> elements"));
 
 				defineAst(outputDir, "Stmt", Arrays.asList(
 					    "Block      : List<Stmt> statements", 
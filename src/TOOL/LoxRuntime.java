@@ -0,0 +1,435 @@
+package TOOL;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import LOX.Builtins;
+import LOX.LoxList;
+import LOX.Rope;
+
+// the runtime library of programs compiled by CompileLox: the values of German Lox and every
+// operation on them, with the same error messages as the interpreter. Lists, maps, ropes and the
+// natives are the interpreter's own (LOX.Builtins and what it uses); CompileLox copies those
+// classes and these into each jar, so a compiled program runs without the interpreter.
+public final class LoxRuntime {
+	private LoxRuntime() {
+	}
+
+	// the value of a global that has not been defined yet
+	public static final Object UNDEFINED = new Object();
+
+	// a runtime error: the message and the line it happened on
+	public static final class LoxError extends RuntimeException {
+		final int line;
+
+		LoxError(String message, int line) {
+			super(message, null, false, false);
+			this.line = line;
+		}
+	}
+
+	public interface Program {
+		void run();
+	}
+
+	// runs the program, reporting a runtime error like the interpreter does
+	public static void run(Program program) {
+		try {
+			program.run();
+		} catch (LoxError error) {
+			System.err.println(error.getMessage() + "\n[Zeile " + error.line + "]");
+			System.exit(70);
+		}
+	}
+
+	// Values
+
+	public abstract static class Callable {
+		public abstract int arity();
+
+		public abstract Object call(Object[] arguments);
+	}
+
+	public interface Body {
+		Object call(Object[] arguments);
+	}
+
+	public interface MethodBody {
+		Object call(Instance self, Object[] arguments);
+	}
+
+	public static final class Function extends Callable {
+		private final String name;
+		private final int arity;
+		private final Body body;
+
+		public Function(String name, int arity, Body body) {
+			this.name = name;
+			this.arity = arity;
+			this.body = body;
+		}
+
+		@Override
+		public int arity() {
+			return arity;
+		}
+
+		@Override
+		public Object call(Object[] arguments) {
+			return body.call(arguments);
+		}
+
+		@Override
+		public String toString() {
+			return "<fn " + name + ">";
+		}
+	}
+
+	static final class Method {
+		final String name;
+		final int arity;
+		final MethodBody body;
+
+		Method(String name, int arity, MethodBody body) {
+			this.name = name;
+			this.arity = arity;
+			this.body = body;
+		}
+	}
+
+	// a method used as a value, remembering its receiver
+	static final class BoundMethod extends Callable {
+		private final Instance self;
+		private final Method method;
+
+		BoundMethod(Instance self, Method method) {
+			this.self = self;
+			this.method = method;
+		}
+
+		@Override
+		public int arity() {
+			return method.arity;
+		}
+
+		@Override
+		public Object call(Object[] arguments) {
+			return method.body.call(self, arguments);
+		}
+
+		@Override
+		public String toString() {
+			return "<fn " + method.name + ">";
+		}
+	}
+
+	public static final class LoxClass extends Callable {
+		private final String name;
+		private final LoxClass superclass;
+		// the inherited methods and the class's own, like the interpreter's flattened table
+		private final Map<String, Method> methods = new HashMap<>();
+
+		public LoxClass(String name, LoxClass superclass) {
+			this.name = name;
+			this.superclass = superclass;
+			if (superclass != null)
+				methods.putAll(superclass.methods);
+		}
+
+		public void method(String methodName, int arity, MethodBody body) {
+			methods.put(methodName, new Method(methodName, arity, body));
+		}
+
+		@Override
+		public int arity() {
+			Method initializer = methods.get("init");
+			return initializer == null ? 0 : initializer.arity;
+		}
+
+		@Override
+		public Object call(Object[] arguments) {
+			Instance instance = new Instance(this);
+			Method initializer = methods.get("init");
+			if (initializer != null)
+				initializer.body.call(instance, arguments);
+			return instance;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	public static final class Instance {
+		private final LoxClass klass;
+		private final Map<String, Object> fields = new HashMap<>();
+
+		Instance(LoxClass klass) {
+			this.klass = klass;
+		}
+
+		@Override
+		public String toString() {
+			return klass.name + " Instanz";
+		}
+	}
+
+	// Natives
+
+	static final class Native extends Callable {
+		private final int arity;
+		private final Body body;
+
+		Native(int arity, Body body) {
+			this.arity = arity;
+			this.body = body;
+		}
+
+		@Override
+		public int arity() {
+			return arity;
+		}
+
+		@Override
+		public Object call(Object[] arguments) {
+			return body.call(arguments);
+		}
+
+		@Override
+		public String toString() {
+			return "<native fn>";
+		}
+	}
+
+	// the same natives as the interpreter's, from Builtins; each takes its arguments as an array
+	private static final Map<String, Callable> NATIVES = new HashMap<>();
+
+	static {
+		Builtins.define(new Natives());
+	}
+
+	// a named class, not an anonymous one, so CompileLox finds it among the nested classes
+	private static final class Natives implements Builtins.Registry {
+		@Override
+		public void register0(String name, Builtins.Native0 body) {
+			NATIVES.put(name, new Native(0, arguments -> body.call()));
+		}
+
+		@Override
+		public void register1(String name, Builtins.Native1 body) {
+			NATIVES.put(name, new Native(1, arguments -> body.call(arguments[0])));
+		}
+
+		@Override
+		public void register2(String name, Builtins.Native2 body) {
+			NATIVES.put(name, new Native(2, arguments -> body.call(arguments[0], arguments[1])));
+		}
+
+		@Override
+		public void registerN(String name, int arity, Builtins.NativeN body) {
+			NATIVES.put(name, new Native(arity, body::call));
+		}
+	}
+
+	// the value a global starts with: the native of that name, if there is one
+	public static Object builtin(String name) {
+		Callable function = NATIVES.get(name);
+		return function == null ? UNDEFINED : function;
+	}
+
+	// [a, b, ...]
+	public static Object list(Object... elements) {
+		LoxList list = new LoxList(elements.length);
+		for (Object element : elements) {
+			list.add(element);
+		}
+		return list;
+	}
+
+	// Variables
+
+	public static Object global(Object value, String name, int line) {
+		if (value == UNDEFINED)
+			throw new LoxError("Undefinierte Variable '" + name + "'.", line);
+		return value;
+	}
+
+	// the value to store into a global, once it is known to be defined
+	public static Object assignGlobal(Object value, Object current, String name, int line) {
+		if (current == UNDEFINED)
+			throw new LoxError("Undefinierte Variable '" + name + "'.", line);
+		return value;
+	}
+
+	// Operators
+
+	public static boolean isTruthy(Object value) {
+		if (value == null)
+			return false;
+		if (value instanceof Boolean)
+			return (boolean) value;
+		return true;
+	}
+
+	public static Object not(Object value) {
+		return !isTruthy(value);
+	}
+
+	public static Object negate(Object value, int line) {
+		if (value instanceof Double)
+			return -(double) value;
+		throw new LoxError("Operand muss eine Zahl sein.", line);
+	}
+
+	private static LoxError operandsError(int line) {
+		return new LoxError("Operanden müssen Zahlen sein.", line);
+	}
+
+	public static Object add(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a + (double) b;
+		if (Rope.isString(a) && Rope.isString(b)) {
+			if (!Rope.fits(a, b))
+				throw new LoxError("Zeichenkette zu lang.", line);
+			return Rope.concat(a, b);
+		}
+		throw new LoxError("Operanden müssen zwei Zahlen oder zwei Zeichenketten sein.", line);
+	}
+
+	public static Object subtract(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a - (double) b;
+		throw operandsError(line);
+	}
+
+	public static Object multiply(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a * (double) b;
+		throw operandsError(line);
+	}
+
+	public static Object divide(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a / (double) b;
+		throw operandsError(line);
+	}
+
+	public static Object greater(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a > (double) b;
+		throw operandsError(line);
+	}
+
+	public static Object greaterEqual(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a >= (double) b;
+		throw operandsError(line);
+	}
+
+	public static Object less(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a < (double) b;
+		throw operandsError(line);
+	}
+
+	public static Object lessEqual(Object a, Object b, int line) {
+		if (a instanceof Double && b instanceof Double)
+			return (double) a <= (double) b;
+		throw operandsError(line);
+	}
+
+	public static boolean isEqual(Object a, Object b) {
+		if (a == null)
+			return b == null;
+		if (b instanceof Rope)
+			return b.equals(a);
+		return a.equals(b);
+	}
+
+	public static Object equal(Object a, Object b) {
+		return isEqual(a, b);
+	}
+
+	public static Object notEqual(Object a, Object b) {
+		return !isEqual(a, b);
+	}
+
+	// Statements
+
+	public static void print(Object value) {
+		System.out.println(Builtins.stringify(value));
+	}
+
+	// an expression statement whose value is not needed
+	public static void discard(Object value) {
+	}
+
+	// Calls
+
+	// checked before the arguments are evaluated, like in the interpreter
+	public static Callable callable(Object callee, int line) {
+		if (callee instanceof Callable)
+			return (Callable) callee;
+		throw new LoxError("Kann nur Funktionen und Klassen aufrufen.", line);
+	}
+
+	public static Object call(Callable callee, int line, Object... arguments) {
+		if (arguments.length != callee.arity()) {
+			throw new LoxError("Erwartet " + callee.arity() + " Argumente, aber erhalten " + arguments.length + ".",
+					line);
+		}
+		try {
+			return callee.call(arguments);
+		} catch (Builtins.NativeError error) {
+			throw new LoxError(error.getMessage(), line);
+		} catch (StackOverflowError error) {
+			throw stackOverflow(line);
+		}
+	}
+
+	// recursion too deep for the Java stack, as an error at the call; the innermost call that
+	// catches it names the line, and the calls around it pass the LoxError on
+	public static LoxError stackOverflow(int line) {
+		return new LoxError("Stapelüberlauf.", line);
+	}
+
+	// Classes and instances
+
+	public static LoxClass superclass(Object value, int line) {
+		if (value instanceof LoxClass)
+			return (LoxClass) value;
+		throw new LoxError("Die Superklasse muss eine Klasse sein.", line);
+	}
+
+	public static Instance instance(Object value, int line) {
+		if (value instanceof Instance)
+			return (Instance) value;
+		throw new LoxError("Nur Instanzen haben Eigenschaften.", line);
+	}
+
+	// a field, or else a method bound to the instance
+	public static Object get(Object object, String name, int line) {
+		Instance instance = instance(object, line);
+		Object value = instance.fields.get(name);
+		if (value != null || instance.fields.containsKey(name))
+			return value;
+		Method method = instance.klass.methods.get(name);
+		if (method == null)
+			throw new LoxError("Undefinierte Eigenschaft '" + name + "'.", line);
+		return new BoundMethod(instance, method);
+	}
+
+	public static Object set(Instance instance, String name, Object value) {
+		instance.fields.put(name, value);
+		return value;
+	}
+
+	// super.name inside a method of klass
+	public static Object superMethod(LoxClass klass, Instance self, String name, int line) {
+		Method method = klass.superclass.methods.get(name);
+		if (method == null)
+			throw new LoxError("Undefinierte Eigenschaft '" + name + "'.", line);
+		return new BoundMethod(self, method);
+	}
+}
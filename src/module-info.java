@@ -5,4 +5,5 @@
  * 
  */
 module Lox {
+	requires java.compiler; // TOOL.CompileLox compiles the Java it generates
 }
\ No newline at end of file